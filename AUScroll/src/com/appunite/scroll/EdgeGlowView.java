@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Draws edge glows of bound {@link ScrollableView} in its own view, so while
+ * glow animates only this view is redrawn. With hardware acceleration even
+ * partial invalidation records whole onDraw of a view again, so without this
+ * view every glow frame records worksheet content too.
+ * 
+ * Has to be placed over bound view with exactly the same bounds, i.e. both
+ * in a FrameLayout with the same layout params.
+ */
+public class EdgeGlowView extends View {
+
+	private ScrollableView mScrollableView = null;
+
+	public EdgeGlowView(Context context) {
+		this(context, null, 0);
+	}
+
+	public EdgeGlowView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public EdgeGlowView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		setWillNotDraw(false);
+	}
+
+	/**
+	 * Binds glow view to view, null unbinds it and view draws its glows
+	 * itself again
+	 */
+	public void setScrollableView(ScrollableView view) {
+		if (mScrollableView != null) {
+			mScrollableView.setEdgeGlowView(null);
+		}
+		mScrollableView = view;
+		if (view != null) {
+			view.setEdgeGlowView(this);
+		}
+		invalidate();
+	}
+
+	public ScrollableView getScrollableView() {
+		return mScrollableView;
+	}
+
+	/**
+	 * Called by bound view that switched to other glow view
+	 */
+	void onUnbound() {
+		mScrollableView = null;
+		invalidate();
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		final ScrollableView view = mScrollableView;
+		if (view == null) {
+			return;
+		}
+		final int restoreCount = canvas.save();
+		// glows are positioned in content coordinates of bound view
+		canvas.translate(-view.getScrollX(), -view.getScrollY());
+		view.drawEdgeGlows(canvas);
+		canvas.restoreToCount(restoreCount);
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.Executor;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Executor for background work that should not compete with scrolling.
+ *
+ * Jobs passed to {@link #execute(Runnable)} are held back while any of bound
+ * views is touched, flung or scaled, and started again when all of them are
+ * idle. Jobs passed to {@link #executeUrgent(Runnable)} always run. While
+ * views are in motion all worker threads, also ones already running a job,
+ * have the lowest priority.
+ *
+ * Bind views with
+ * {@link ScrollableView#addOnInteractionStateChangeListener(ScrollableView.OnInteractionStateChangeListener)}
+ * and unbind them with {@link #removeView(ScrollableView)}. Views detached
+ * from window become idle, so they do not hold jobs back.
+ */
+public class InteractionAwareExecutor implements Executor,
+		ScrollableView.OnInteractionStateChangeListener {
+
+	private static final String TAG = InteractionAwareExecutor.class
+			.getCanonicalName();
+
+	private final Object mLock = new Object();
+	private final ArrayDeque<Runnable> mUrgentQueue = new ArrayDeque<Runnable>();
+	private final ArrayDeque<Runnable> mQueue = new ArrayDeque<Runnable>();
+	private final HashSet<ScrollableView> mMovingViews = new HashSet<ScrollableView>();
+	private final Thread[] mThreads;
+	// worker thread ids, 0 until worker starts
+	private final int[] mTids;
+	private int mPriority = Process.THREAD_PRIORITY_BACKGROUND;
+	private boolean mShutdown = false;
+
+	public InteractionAwareExecutor(int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("threadCount < 1");
+		}
+		mThreads = new Thread[threadCount];
+		mTids = new int[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			mThreads[i] = new Thread(new Worker(i),
+					"InteractionAwareExecutor #" + i);
+			mThreads[i].start();
+		}
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		enqueue(mQueue, command);
+	}
+
+	public void executeUrgent(Runnable command) {
+		enqueue(mUrgentQueue, command);
+	}
+
+	private void enqueue(ArrayDeque<Runnable> queue, Runnable command) {
+		if (command == null) {
+			throw new NullPointerException();
+		}
+		synchronized (mLock) {
+			if (mShutdown) {
+				throw new IllegalStateException("Executor is shut down");
+			}
+			queue.add(command);
+			mLock.notify();
+		}
+	}
+
+	/**
+	 * Removes not yet started job
+	 *
+	 * @return true if job was removed before start
+	 */
+	public boolean remove(Runnable command) {
+		synchronized (mLock) {
+			return mQueue.remove(command) || mUrgentQueue.remove(command);
+		}
+	}
+
+	/**
+	 * Drops pending jobs and stops worker threads after currently running jobs
+	 * finish
+	 */
+	public void shutdown() {
+		synchronized (mLock) {
+			mShutdown = true;
+			mQueue.clear();
+			mUrgentQueue.clear();
+			mLock.notifyAll();
+		}
+	}
+
+	public boolean isInMotion() {
+		synchronized (mLock) {
+			return !mMovingViews.isEmpty();
+		}
+	}
+
+	/**
+	 * Unbinds view, it no longer holds jobs back even if it is still in
+	 * motion
+	 */
+	public void removeView(ScrollableView view) {
+		view.removeOnInteractionStateChangeListener(this);
+		synchronized (mLock) {
+			if (mMovingViews.remove(view)) {
+				onMotionChangedLocked();
+			}
+		}
+	}
+
+	@Override
+	public void onInteractionStateChanged(ScrollableView view, int oldState,
+			int newState, long timestamp) {
+		synchronized (mLock) {
+			final boolean changed = newState == ScrollableView.INTERACTION_IDLE ? mMovingViews
+					.remove(view) : mMovingViews.add(view);
+			if (changed) {
+				onMotionChangedLocked();
+			}
+		}
+	}
+
+	private void onMotionChangedLocked() {
+		final int priority = mMovingViews.isEmpty() ? Process.THREAD_PRIORITY_BACKGROUND
+				: Process.THREAD_PRIORITY_LOWEST;
+		if (priority == mPriority) {
+			return;
+		}
+		mPriority = priority;
+		// lowers also workers in the middle of a job
+		for (int i = 0; i < mTids.length; i++) {
+			if (mTids[i] != 0) {
+				Process.setThreadPriority(mTids[i], priority);
+			}
+		}
+		if (mMovingViews.isEmpty()) {
+			mLock.notifyAll();
+		}
+	}
+
+	private Runnable take() throws InterruptedException {
+		synchronized (mLock) {
+			for (;;) {
+				if (mShutdown) {
+					return null;
+				}
+				if (!mUrgentQueue.isEmpty()) {
+					return mUrgentQueue.poll();
+				}
+				if (mMovingViews.isEmpty() && !mQueue.isEmpty()) {
+					return mQueue.poll();
+				}
+				mLock.wait();
+			}
+		}
+	}
+
+	private class Worker implements Runnable {
+
+		private final int mIndex;
+
+		Worker(int index) {
+			mIndex = index;
+		}
+
+		@Override
+		public void run() {
+			synchronized (mLock) {
+				mTids[mIndex] = Process.myTid();
+				Process.setThreadPriority(mPriority);
+			}
+			try {
+				for (;;) {
+					final Runnable command = take();
+					if (command == null) {
+						return;
+					}
+					try {
+						command.run();
+					} catch (RuntimeException e) {
+						Log.e(TAG, "Job failed", e);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				synchronized (mLock) {
+					mTids[mIndex] = 0;
+				}
+			}
+		}
+	}
+}
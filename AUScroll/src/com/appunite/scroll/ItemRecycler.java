@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.ArrayList;
+
+import android.util.SparseArray;
+
+/**
+ * Pool of per-item render state (text layouts, paths, drawables) for
+ * virtualized content.
+ *
+ * Item gets a holder bound with {@link #obtain(long, int, float, float, float, float)}
+ * and keeps it while it stays in the visible window. When visible window
+ * moves with {@link #setVisibleWindow(float, float, float, float)} holders of
+ * items that left it go to a scrap pool of their type and are rebound to
+ * items scrolled in. After pools are warmed up nothing is allocated.
+ */
+public abstract class ItemRecycler<H> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// open addressing hash table with linear probing, keyed by item id
+	private long[] mIds;
+	private Object[] mHolders;
+	private int[] mTypes;
+	private float[] mBounds;
+	private boolean[] mOccupied;
+	private int mSize = 0;
+
+	private final SparseArray<ArrayList<H>> mScrap = new SparseArray<ArrayList<H>>();
+
+	private float mWindowLeft = Float.NEGATIVE_INFINITY;
+	private float mWindowTop = Float.NEGATIVE_INFINITY;
+	private float mWindowRight = Float.POSITIVE_INFINITY;
+	private float mWindowBottom = Float.POSITIVE_INFINITY;
+	private float mFrozenRight = Float.NEGATIVE_INFINITY;
+	private float mFrozenBottom = Float.NEGATIVE_INFINITY;
+
+	public ItemRecycler() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	protected abstract H onCreateHolder(int type);
+
+	protected abstract void onBindHolder(H holder, long itemId, int type);
+
+	/**
+	 * Called when item left visible window and holder goes to scrap pool
+	 */
+	protected void onRecycleHolder(H holder) {
+	}
+
+	/**
+	 * @return holder bound to item, reused if item is already bound or taken
+	 *         from scrap pool of given type. Bounds are in worksheet
+	 *         coordinates and decide when item leaves visible window.
+	 */
+	@SuppressWarnings("unchecked")
+	public H obtain(long itemId, int type, float left, float top,
+			float right, float bottom) {
+		int slot = find(itemId);
+		if (slot >= 0 && mTypes[slot] == type) {
+			setBounds(slot, left, top, right, bottom);
+			return (H) mHolders[slot];
+		}
+		if (slot >= 0) {
+			// type of item changed
+			recycleSlot(slot);
+			removeSlot(slot);
+		}
+		final H holder = obtainScrap(type);
+		onBindHolder(holder, itemId, type);
+
+		if (mSize + 1 > mIds.length >> 1) {
+			grow();
+		}
+		slot = insertionSlot(itemId);
+		mIds[slot] = itemId;
+		mHolders[slot] = holder;
+		mTypes[slot] = type;
+		mOccupied[slot] = true;
+		setBounds(slot, left, top, right, bottom);
+		mSize += 1;
+		return holder;
+	}
+
+	/**
+	 * Moves visible window (worksheet coordinates) and recycles holders of
+	 * items that are outside of it
+	 */
+	public void setVisibleWindow(float left, float top, float right,
+			float bottom) {
+		setVisibleWindow(left, top, right, bottom, Float.NEGATIVE_INFINITY,
+				Float.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Like {@link #setVisibleWindow(float, float, float, float)}, but also
+	 * keeps items frozen on screen: ones left of frozenRight that are
+	 * vertically in window and ones above frozenBottom that are horizontally
+	 * in window. O(number of bound items).
+	 */
+	public void setVisibleWindow(float left, float top, float right,
+			float bottom, float frozenRight, float frozenBottom) {
+		mWindowLeft = left;
+		mWindowTop = top;
+		mWindowRight = right;
+		mWindowBottom = bottom;
+		mFrozenRight = frozenRight;
+		mFrozenBottom = frozenBottom;
+		int slot = 0;
+		while (slot < mIds.length) {
+			if (mOccupied[slot] && !isInWindow(slot)) {
+				recycleSlot(slot);
+				// backward shift may move not yet visited entry here
+				removeSlot(slot);
+				continue;
+			}
+			slot += 1;
+		}
+	}
+
+	/**
+	 * Recycles holder of single item, lets owner that knows which items left
+	 * the window avoid scan of all bound items, O(1)
+	 * 
+	 * @return true if item was bound
+	 */
+	public boolean recycleItem(long itemId) {
+		final int slot = find(itemId);
+		if (slot < 0) {
+			return false;
+		}
+		recycleSlot(slot);
+		removeSlot(slot);
+		return true;
+	}
+
+	/**
+	 * Recycles all bound holders, i.e. after content change
+	 */
+	public void recycleAll() {
+		for (int slot = 0; slot < mIds.length; slot++) {
+			if (mOccupied[slot]) {
+				recycleSlot(slot);
+				mOccupied[slot] = false;
+				mHolders[slot] = null;
+			}
+		}
+		mSize = 0;
+	}
+
+	public int getBoundCount() {
+		return mSize;
+	}
+
+	private boolean isInWindow(int slot) {
+		final int offset = slot << 2;
+		final float left = mBounds[offset];
+		final float top = mBounds[offset + 1];
+		final boolean inColumns = left < mFrozenRight
+				|| (left < mWindowRight && mBounds[offset + 2] > mWindowLeft);
+		final boolean inRows = top < mFrozenBottom
+				|| (top < mWindowBottom && mBounds[offset + 3] > mWindowTop);
+		return inColumns && inRows;
+	}
+
+	private void setBounds(int slot, float left, float top, float right,
+			float bottom) {
+		final int offset = slot << 2;
+		mBounds[offset] = left;
+		mBounds[offset + 1] = top;
+		mBounds[offset + 2] = right;
+		mBounds[offset + 3] = bottom;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void recycleSlot(int slot) {
+		final H holder = (H) mHolders[slot];
+		onRecycleHolder(holder);
+		final int type = mTypes[slot];
+		ArrayList<H> scrap = mScrap.get(type);
+		if (scrap == null) {
+			scrap = new ArrayList<H>();
+			mScrap.put(type, scrap);
+		}
+		scrap.add(holder);
+	}
+
+	private H obtainScrap(int type) {
+		final ArrayList<H> scrap = mScrap.get(type);
+		if (scrap == null || scrap.isEmpty()) {
+			return onCreateHolder(type);
+		}
+		return scrap.remove(scrap.size() - 1);
+	}
+
+	private int hash(long id) {
+		final int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (mIds.length - 1);
+	}
+
+	private int find(long id) {
+		final int mask = mIds.length - 1;
+		for (int slot = hash(id); mOccupied[slot]; slot = (slot + 1) & mask) {
+			if (mIds[slot] == id) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private int insertionSlot(long id) {
+		final int mask = mIds.length - 1;
+		int slot = hash(id);
+		while (mOccupied[slot]) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void removeSlot(int slot) {
+		final int mask = mIds.length - 1;
+		mOccupied[slot] = false;
+		mHolders[slot] = null;
+		mSize -= 1;
+		// backward shift deletion keeps probe sequences without tombstones
+		int hole = slot;
+		int next = (slot + 1) & mask;
+		while (mOccupied[next]) {
+			final int home = hash(mIds[next]);
+			final boolean movable = hole <= next ? (home <= hole || home > next)
+					: (home <= hole && home > next);
+			if (movable) {
+				mIds[hole] = mIds[next];
+				mHolders[hole] = mHolders[next];
+				mTypes[hole] = mTypes[next];
+				System.arraycopy(mBounds, next << 2, mBounds, hole << 2, 4);
+				mOccupied[hole] = true;
+				mOccupied[next] = false;
+				mHolders[next] = null;
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+	}
+
+	private void allocate(int capacity) {
+		mIds = new long[capacity];
+		mHolders = new Object[capacity];
+		mTypes = new int[capacity];
+		mBounds = new float[capacity << 2];
+		mOccupied = new boolean[capacity];
+	}
+
+	private void grow() {
+		final long[] ids = mIds;
+		final Object[] holders = mHolders;
+		final int[] types = mTypes;
+		final float[] bounds = mBounds;
+		final boolean[] occupied = mOccupied;
+		allocate(ids.length << 1);
+		for (int i = 0; i < ids.length; i++) {
+			if (occupied[i]) {
+				final int slot = insertionSlot(ids[i]);
+				mIds[slot] = ids[i];
+				mHolders[slot] = holders[i];
+				mTypes[slot] = types[i];
+				System.arraycopy(bounds, i << 2, mBounds, slot << 2, 4);
+				mOccupied[slot] = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.Arrays;
+
+import android.util.SparseArray;
+
+/**
+ * Chooses non-overlapping subset of labels for current scale factor.
+ *
+ * Labels are anchored at worksheet point (top left corner) and have
+ * constant on-screen size. For every scale level (four per octave) all
+ * labels are placed greedily by priority into screen-space occupancy grid
+ * when the level is first used, so label of higher priority always wins
+ * regardless of scroll history. Decisions of recently used levels are kept,
+ * so scrolling only looks them up and shown labels never jump.
+ *
+ * Not thread safe.
+ */
+public class LabelDeclutterer {
+
+	private static final int LEVELS_PER_OCTAVE = 4;
+	private static final int MAX_CACHED_LEVELS = 8;
+	private static final float OCCUPANCY_CELL_SIZE = 32.0f;
+	private static final int TARGET_LABELS_PER_INDEX_CELL = 8;
+
+	private static final byte REJECTED = 0;
+	private static final byte ACCEPTED = 1;
+
+	private int mCount = 0;
+	private float[] mX = new float[16];
+	private float[] mY = new float[16];
+	private float[] mWidth = new float[16];
+	private float[] mHeight = new float[16];
+	private int[] mPriority = new int[16];
+	private float mMaxWidth = 0.0f;
+	private float mMaxHeight = 0.0f;
+
+	// rank of every label in priority order, filled by buildIndex()
+	private int[] mRank;
+	private int[] mByRank;
+
+	// uniform grid over anchors in compressed row storage
+	private boolean mIndexValid = false;
+	private float mIndexLeft;
+	private float mIndexTop;
+	private float mIndexCellSize;
+	private int mIndexColumns;
+	private int mIndexRows;
+	private int[] mIndexCellStart;
+	private int[] mIndexLabels;
+
+	private final SparseArray<Level> mLevels = new SparseArray<Level>();
+	private int mLevelUse = 0;
+
+	private int[] mCandidates = new int[64];
+
+	/**
+	 * @return index of label
+	 */
+	public int addLabel(float x, float y, float widthPx, float heightPx,
+			int priority) {
+		if (mCount == mX.length) {
+			final int capacity = mCount << 1;
+			mX = Arrays.copyOf(mX, capacity);
+			mY = Arrays.copyOf(mY, capacity);
+			mWidth = Arrays.copyOf(mWidth, capacity);
+			mHeight = Arrays.copyOf(mHeight, capacity);
+			mPriority = Arrays.copyOf(mPriority, capacity);
+		}
+		mX[mCount] = x;
+		mY[mCount] = y;
+		mWidth[mCount] = widthPx;
+		mHeight[mCount] = heightPx;
+		mPriority[mCount] = priority;
+		mMaxWidth = Math.max(mMaxWidth, widthPx);
+		mMaxHeight = Math.max(mMaxHeight, heightPx);
+		invalidate();
+		return mCount++;
+	}
+
+	public void clear() {
+		mCount = 0;
+		mMaxWidth = 0.0f;
+		mMaxHeight = 0.0f;
+		invalidate();
+	}
+
+	public int getLabelCount() {
+		return mCount;
+	}
+
+	private void invalidate() {
+		mIndexValid = false;
+		mLevels.clear();
+	}
+
+	/**
+	 * Finds labels to draw in visible rectangle (worksheet coordinates) at
+	 * scale factor.
+	 *
+	 * @param out
+	 *            receives indexes of labels to draw, in priority order
+	 * @return number of labels written to out, at most out.length
+	 */
+	public int select(float left, float top, float right, float bottom,
+			float scaleFactor, int[] out) {
+		if (mCount == 0) {
+			return 0;
+		}
+		if (!mIndexValid) {
+			buildIndex();
+		}
+		final int levelKey = (int) Math.floor(Math.log(scaleFactor)
+				/ Math.log(2) * LEVELS_PER_OCTAVE + 0.5);
+		Level level = mLevels.get(levelKey);
+		if (level == null) {
+			if (mLevels.size() >= MAX_CACHED_LEVELS) {
+				evictLeastRecentlyUsedLevel();
+			}
+			level = new Level(mCount, (float) Math.pow(2.0, (double) levelKey
+					/ LEVELS_PER_OCTAVE));
+			// whole level at once, so placement does not depend on viewport
+			for (int rank = 0; rank < mCount; rank++) {
+				level.place(this, mByRank[rank]);
+			}
+			mLevels.put(levelKey, level);
+		}
+		level.mLastUse = ++mLevelUse;
+		final float levelScale = level.mScale;
+
+		// labels anchored outside may still reach into visible rectangle
+		final int candidateCount = collectCandidates(left - mMaxWidth
+				/ levelScale, top - mMaxHeight / levelScale, right, bottom);
+		final int[] candidates = mCandidates;
+
+		// output in priority order
+		for (int i = 0; i < candidateCount; i++) {
+			candidates[i] = mRank[candidates[i]];
+		}
+		Arrays.sort(candidates, 0, candidateCount);
+		int written = 0;
+		for (int i = 0; i < candidateCount; i++) {
+			final int label = mByRank[candidates[i]];
+			if (level.mDecisions[label] == ACCEPTED && written < out.length
+					&& intersectsOnScreen(label, levelScale, left, top, right,
+							bottom)) {
+				out[written++] = label;
+			}
+		}
+		return written;
+	}
+
+	private void evictLeastRecentlyUsedLevel() {
+		int oldest = 0;
+		for (int i = 1; i < mLevels.size(); i++) {
+			if (mLevels.valueAt(i).mLastUse < mLevels.valueAt(oldest).mLastUse) {
+				oldest = i;
+			}
+		}
+		mLevels.removeAt(oldest);
+	}
+
+	private boolean intersectsOnScreen(int label, float levelScale,
+			float left, float top, float right, float bottom) {
+		final float x = mX[label];
+		final float y = mY[label];
+		return x < right && y < bottom
+				&& x + mWidth[label] / levelScale > left
+				&& y + mHeight[label] / levelScale > top;
+	}
+
+	private int collectCandidates(float left, float top, float right,
+			float bottom) {
+		final int firstColumn = indexColumn(left);
+		final int lastColumn = indexColumn(right);
+		final int firstRow = indexRow(top);
+		final int lastRow = indexRow(bottom);
+		int count = 0;
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				final int cell = row * mIndexColumns + column;
+				final int end = mIndexCellStart[cell + 1];
+				for (int i = mIndexCellStart[cell]; i < end; i++) {
+					final int label = mIndexLabels[i];
+					final float x = mX[label];
+					final float y = mY[label];
+					if (x < left || x > right || y < top || y > bottom) {
+						continue;
+					}
+					if (count == mCandidates.length) {
+						mCandidates = Arrays.copyOf(mCandidates, count << 1);
+					}
+					mCandidates[count++] = label;
+				}
+			}
+		}
+		return count;
+	}
+
+	private int indexColumn(float x) {
+		final int column = (int) ((x - mIndexLeft) / mIndexCellSize);
+		return Math.max(0, Math.min(mIndexColumns - 1, column));
+	}
+
+	private int indexRow(float y) {
+		final int row = (int) ((y - mIndexTop) / mIndexCellSize);
+		return Math.max(0, Math.min(mIndexRows - 1, row));
+	}
+
+	private void buildIndex() {
+		final int count = mCount;
+
+		// priority order, ties keep insertion order; ~priority reverses
+		// order and unlike negation fits int for any priority
+		final long[] order = new long[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = ((long) ~mPriority[i] << 32) | i;
+		}
+		Arrays.sort(order);
+		mRank = new int[count];
+		mByRank = new int[count];
+		for (int rank = 0; rank < count; rank++) {
+			final int label = (int) order[rank];
+			mRank[label] = rank;
+			mByRank[rank] = label;
+		}
+
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, mX[i]);
+			minY = Math.min(minY, mY[i]);
+			maxX = Math.max(maxX, mX[i]);
+			maxY = Math.max(maxY, mY[i]);
+		}
+		final float width = Math.max(1.0f, maxX - minX);
+		final float height = Math.max(1.0f, maxY - minY);
+		final int cells = Math.max(1, count / TARGET_LABELS_PER_INDEX_CELL);
+		mIndexCellSize = Math.max(1.0f,
+				(float) Math.sqrt(width * height / cells));
+		mIndexLeft = minX;
+		mIndexTop = minY;
+		mIndexColumns = (int) (width / mIndexCellSize) + 1;
+		mIndexRows = (int) (height / mIndexCellSize) + 1;
+
+		final int cellCount = mIndexColumns * mIndexRows;
+		mIndexCellStart = new int[cellCount + 1];
+		for (int i = 0; i < count; i++) {
+			mIndexCellStart[indexCell(i) + 1] += 1;
+		}
+		for (int cell = 0; cell < cellCount; cell++) {
+			mIndexCellStart[cell + 1] += mIndexCellStart[cell];
+		}
+		final int[] fill = Arrays.copyOf(mIndexCellStart, cellCount);
+		mIndexLabels = new int[count];
+		for (int i = 0; i < count; i++) {
+			mIndexLabels[fill[indexCell(i)]++] = i;
+		}
+		mIndexValid = true;
+	}
+
+	private int indexCell(int label) {
+		return indexRow(mY[label]) * mIndexColumns + indexColumn(mX[label]);
+	}
+
+	private static class Level {
+		final float mScale;
+		final byte[] mDecisions;
+		int mLastUse;
+
+		// occupancy grid: open addressing map from cell to head of list of
+		// accepted labels overlapping it
+		long[] mCellKeys = new long[64];
+		int[] mCellHeads = new int[64];
+		boolean[] mCellUsed = new boolean[64];
+		int mCellCount = 0;
+		int[] mEntryLabel = new int[64];
+		int[] mEntryNext = new int[64];
+		int mEntryCount = 0;
+
+		Level(int labelCount, float scale) {
+			mScale = scale;
+			mDecisions = new byte[labelCount];
+		}
+
+		void place(LabelDeclutterer labels, int label) {
+			final float left = labels.mX[label] * mScale;
+			final float top = labels.mY[label] * mScale;
+			final float right = left + labels.mWidth[label];
+			final float bottom = top + labels.mHeight[label];
+			final int firstColumn = (int) Math.floor(left / OCCUPANCY_CELL_SIZE);
+			final int lastColumn = (int) Math.floor(right / OCCUPANCY_CELL_SIZE);
+			final int firstRow = (int) Math.floor(top / OCCUPANCY_CELL_SIZE);
+			final int lastRow = (int) Math.floor(bottom / OCCUPANCY_CELL_SIZE);
+
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					final int slot = findCell(key(column, row));
+					if (slot < 0) {
+						continue;
+					}
+					for (int entry = mCellHeads[slot]; entry >= 0; entry = mEntryNext[entry]) {
+						final int other = mEntryLabel[entry];
+						final float otherLeft = labels.mX[other] * mScale;
+						final float otherTop = labels.mY[other] * mScale;
+						if (otherLeft < right
+								&& otherTop < bottom
+								&& otherLeft + labels.mWidth[other] > left
+								&& otherTop + labels.mHeight[other] > top) {
+							mDecisions[label] = REJECTED;
+							return;
+						}
+					}
+				}
+			}
+
+			mDecisions[label] = ACCEPTED;
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					addEntry(key(column, row), label);
+				}
+			}
+		}
+
+		private static long key(int column, int row) {
+			return ((long) column << 32) | (row & 0xffffffffL);
+		}
+
+		private int hash(long key) {
+			final int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & (mCellKeys.length - 1);
+		}
+
+		private int findCell(long key) {
+			final int mask = mCellKeys.length - 1;
+			for (int slot = hash(key); mCellUsed[slot]; slot = (slot + 1) & mask) {
+				if (mCellKeys[slot] == key) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		private void addEntry(long key, int label) {
+			int slot = findCell(key);
+			if (slot < 0) {
+				if (mCellCount + 1 > mCellKeys.length >> 1) {
+					growCells();
+				}
+				final int mask = mCellKeys.length - 1;
+				slot = hash(key);
+				while (mCellUsed[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				mCellUsed[slot] = true;
+				mCellKeys[slot] = key;
+				mCellHeads[slot] = -1;
+				mCellCount += 1;
+			}
+			if (mEntryCount == mEntryLabel.length) {
+				mEntryLabel = Arrays.copyOf(mEntryLabel, mEntryCount << 1);
+				mEntryNext = Arrays.copyOf(mEntryNext, mEntryCount << 1);
+			}
+			mEntryLabel[mEntryCount] = label;
+			mEntryNext[mEntryCount] = mCellHeads[slot];
+			mCellHeads[slot] = mEntryCount;
+			mEntryCount += 1;
+		}
+
+		private void growCells() {
+			final long[] keys = mCellKeys;
+			final int[] heads = mCellHeads;
+			final boolean[] used = mCellUsed;
+			final int capacity = keys.length << 1;
+			mCellKeys = new long[capacity];
+			mCellHeads = new int[capacity];
+			mCellUsed = new boolean[capacity];
+			final int mask = capacity - 1;
+			for (int i = 0; i < keys.length; i++) {
+				if (!used[i]) {
+					continue;
+				}
+				int slot = hash(keys[i]);
+				while (mCellUsed[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				mCellUsed[slot] = true;
+				mCellKeys[slot] = keys[i];
+				mCellHeads[slot] = heads[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.graphics.Canvas;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.SparseArray;
+
+/**
+ * Draws worksheet labels without shaping text on every pinch frame.
+ *
+ * Scale factors are quantized to buckets (four per octave). Every label is
+ * laid out once per bucket at bucket's text size and cached in LRU; inside a
+ * bucket cached layout is reused by scaling canvas by at most 2^(1/8). Labels
+ * smaller on screen than readable size are skipped.
+ *
+ * Has to be used on one thread, usually in
+ * {@link ScrollableScalableView#onDraw(Canvas, int, int, int, int, float, float)}
+ */
+public class LabelRenderer {
+
+	private static final int BUCKETS_PER_OCTAVE = 4;
+	private static final float DEFAULT_MIN_READABLE_TEXT_SIZE = 6.0f;
+
+	private final TextPaint mPaint;
+	private final SparseArray<TextPaint> mBucketPaints = new SparseArray<TextPaint>();
+	private final LruCache<LayoutKey, CachedLayout> mCache;
+	private final LayoutKey mLookupKey = new LayoutKey();
+	private float mMinReadableTextSize = DEFAULT_MIN_READABLE_TEXT_SIZE;
+
+	private float mLastScaleFactor = Float.NaN;
+	private int mLastBucket;
+
+	/**
+	 * @param paint
+	 *            paint of labels, its text size is in worksheet units
+	 * @param maxLayouts
+	 *            maximal number of cached layouts
+	 */
+	public LabelRenderer(TextPaint paint, int maxLayouts) {
+		mPaint = paint;
+		mCache = new LruCache<LayoutKey, CachedLayout>(maxLayouts);
+	}
+
+	/**
+	 * @param textSize
+	 *            minimal on-screen text size in pixels, smaller labels are
+	 *            not drawn
+	 */
+	public void setMinReadableTextSize(float textSize) {
+		mMinReadableTextSize = textSize;
+	}
+
+	/**
+	 * @return true if label is readable at scale factor
+	 */
+	public boolean isReadable(float scaleFactor) {
+		return mPaint.getTextSize() * scaleFactor >= mMinReadableTextSize;
+	}
+
+	/**
+	 * Draws label with top left corner at worksheet position x, y on canvas
+	 * already scaled by scaleFactor. Text is kept in cache, so it should not
+	 * be mutated afterwards.
+	 *
+	 * @return false if label was skipped as not readable
+	 */
+	public boolean draw(Canvas canvas, long labelId, CharSequence text,
+			float x, float y, float scaleFactor) {
+		if (!isReadable(scaleFactor)) {
+			return false;
+		}
+		final int bucket = bucketFor(scaleFactor);
+		final float bucketScale = bucketScale(bucket);
+		final Layout layout = obtainLayout(labelId, text, bucket, bucketScale);
+
+		final int restoreCount = canvas.save();
+		canvas.translate(x, y);
+		canvas.scale(1.0f / bucketScale, 1.0f / bucketScale);
+		layout.draw(canvas);
+		canvas.restoreToCount(restoreCount);
+		return true;
+	}
+
+	/**
+	 * @return width of label in worksheet units, layout is cached like in
+	 *         {@link #draw(Canvas, long, CharSequence, float, float, float)}
+	 */
+	public float getWidth(long labelId, CharSequence text, float scaleFactor) {
+		final int bucket = bucketFor(scaleFactor);
+		final float bucketScale = bucketScale(bucket);
+		return obtainLayout(labelId, text, bucket, bucketScale).getWidth()
+				/ bucketScale;
+	}
+
+	/**
+	 * Drops cached layouts, i.e. after paint change
+	 */
+	public void evictAll() {
+		mCache.evictAll();
+		mBucketPaints.clear();
+	}
+
+	private int bucketFor(float scaleFactor) {
+		if (scaleFactor != mLastScaleFactor) {
+			mLastScaleFactor = scaleFactor;
+			mLastBucket = (int) Math.floor(Math.log(scaleFactor) / Math.log(2)
+					* BUCKETS_PER_OCTAVE + 0.5);
+		}
+		return mLastBucket;
+	}
+
+	private static float bucketScale(int bucket) {
+		return (float) Math.pow(2.0, (double) bucket / BUCKETS_PER_OCTAVE);
+	}
+
+	private Layout obtainLayout(long labelId, CharSequence text, int bucket,
+			float bucketScale) {
+		mLookupKey.set(labelId, bucket);
+		CachedLayout cached = mCache.get(mLookupKey);
+		if (cached != null && TextUtils.equals(cached.mText, text)) {
+			return cached.mLayout;
+		}
+		final TextPaint paint = bucketPaint(bucket, bucketScale);
+		final int width = (int) Math.ceil(Layout.getDesiredWidth(text, paint));
+		cached = new CachedLayout(text, new StaticLayout(text, paint, width,
+				Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false));
+		final LayoutKey key = new LayoutKey();
+		key.set(labelId, bucket);
+		mCache.put(key, cached);
+		return cached.mLayout;
+	}
+
+	private TextPaint bucketPaint(int bucket, float bucketScale) {
+		// layouts keep reference to paint, so every bucket needs its own
+		TextPaint paint = mBucketPaints.get(bucket);
+		if (paint == null) {
+			paint = new TextPaint(mPaint);
+			paint.setTextSize(mPaint.getTextSize() * bucketScale);
+			mBucketPaints.put(bucket, paint);
+		}
+		return paint;
+	}
+
+	private static class CachedLayout {
+		final CharSequence mText;
+		final Layout mLayout;
+
+		CachedLayout(CharSequence text, Layout layout) {
+			mText = text;
+			mLayout = layout;
+		}
+	}
+
+	private static final class LayoutKey {
+		long mLabelId;
+		int mBucket;
+
+		void set(long labelId, int bucket) {
+			mLabelId = labelId;
+			mBucket = bucket;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (mLabelId ^ (mLabelId >>> 32)) * 31 + mBucket;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof LayoutKey)) {
+				return false;
+			}
+			final LayoutKey other = (LayoutKey) o;
+			return mLabelId == other.mLabelId && mBucket == other.mBucket;
+		}
+	}
+}
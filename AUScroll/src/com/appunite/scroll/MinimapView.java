@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Overview of whole worksheet of bound {@link ScrollableView} with its
+ * viewport marked. Worksheet is drawn once into small bitmap and redrawn only
+ * where changes are reported by
+ * {@link ScrollableView#notifyContentChanged(int, int, int, int, long)}, so
+ * scrolling the main view redraws only viewport rectangle. Dragging on
+ * minimap smoothly scrolls the main view.
+ */
+public class MinimapView extends View implements
+		ScrollableView.OnContentChangeListener,
+		ScrollableView.OnViewportChangeListener {
+
+	private static final int DEFAULT_VIEWPORT_COLOR = Color.argb(64, 51, 181,
+			229);
+	private static final int DEFAULT_VIEWPORT_STROKE_COLOR = Color.rgb(51,
+			181, 229);
+
+	private ScrollableView mScrollableView = null;
+	// listeners are registered only while attached, so bound view does not
+	// keep detached minimap alive
+	private boolean mAttached = false;
+
+	private Bitmap mSnapshot = null;
+	private Canvas mSnapshotCanvas = null;
+	private boolean mSnapshotValid = false;
+	private final Rect mSnapshotDirty = new Rect();
+	private float mSnapshotScale;
+	private int mSnapshotLeft;
+	private int mSnapshotTop;
+	private int mSnapshotWorksheetWidth;
+	private int mSnapshotWorksheetHeight;
+
+	private final Rect mViewportRect = new Rect();
+	private final Rect mTmpRect = new Rect();
+	private final Paint mViewportPaint = new Paint();
+	private final Paint mViewportStrokePaint = new Paint();
+
+	private boolean mDragging = false;
+	private float mGrabOffsetX;
+	private float mGrabOffsetY;
+
+	public MinimapView(Context context) {
+		this(context, null, 0);
+	}
+
+	public MinimapView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public MinimapView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		mViewportPaint.setColor(DEFAULT_VIEWPORT_COLOR);
+		mViewportStrokePaint.setColor(DEFAULT_VIEWPORT_STROKE_COLOR);
+		mViewportStrokePaint.setStyle(Paint.Style.STROKE);
+		mViewportStrokePaint.setStrokeWidth(2.0f * context.getResources()
+				.getDisplayMetrics().density);
+	}
+
+	/**
+	 * Binds minimap to view, null unbinds it
+	 */
+	public void setScrollableView(ScrollableView view) {
+		if (mAttached) {
+			unregisterListeners();
+		}
+		mScrollableView = view;
+		if (mAttached) {
+			registerListeners();
+		}
+		refresh();
+	}
+
+	private void registerListeners() {
+		if (mScrollableView != null) {
+			mScrollableView.addOnContentChangeListener(this);
+			mScrollableView.addOnViewportChangeListener(this);
+		}
+	}
+
+	private void unregisterListeners() {
+		if (mScrollableView != null) {
+			mScrollableView.removeOnContentChangeListener(this);
+			mScrollableView.removeOnViewportChangeListener(this);
+		}
+	}
+
+	public ScrollableView getScrollableView() {
+		return mScrollableView;
+	}
+
+	public void setViewportColors(int fillColor, int strokeColor) {
+		mViewportPaint.setColor(fillColor);
+		mViewportStrokePaint.setColor(strokeColor);
+		invalidate();
+	}
+
+	/**
+	 * Redraws whole snapshot, needed when content changes are not reported
+	 * by {@link ScrollableView#notifyContentChanged(int, int, int, int, long)}
+	 */
+	public void refresh() {
+		mSnapshotValid = false;
+		invalidate();
+	}
+
+	@Override
+	public void onContentChanged(ScrollableView view, Rect[] changes,
+			int count, long contentVersion) {
+		if (!mSnapshotValid) {
+			return;
+		}
+		final Rect dirty = mTmpRect;
+		for (int i = 0; i < count; i++) {
+			final Rect change = changes[i];
+			dirty.set((int) Math.floor(change.left * mSnapshotScale),
+					(int) Math.floor(change.top * mSnapshotScale),
+					(int) Math.ceil(change.right * mSnapshotScale),
+					(int) Math.ceil(change.bottom * mSnapshotScale));
+			mSnapshotDirty.union(dirty);
+			invalidate(mSnapshotLeft + dirty.left, mSnapshotTop + dirty.top,
+					mSnapshotLeft + dirty.right, mSnapshotTop + dirty.bottom);
+		}
+	}
+
+	@Override
+	public void onViewportChanged(ScrollableView view) {
+		if (!mSnapshotValid) {
+			invalidate();
+			return;
+		}
+		// old and new rectangle have to be redrawn
+		final Rect rect = mTmpRect;
+		rect.set(mViewportRect);
+		computeViewportRect();
+		rect.union(mViewportRect);
+		final int stroke = (int) Math.ceil(mViewportStrokePaint
+				.getStrokeWidth());
+		invalidate(rect.left - stroke, rect.top - stroke, rect.right + stroke,
+				rect.bottom + stroke);
+	}
+
+	private void computeViewportRect() {
+		final ScrollableView view = mScrollableView;
+		if (view == null) {
+			mViewportRect.setEmpty();
+			return;
+		}
+		final float scaleX = mSnapshotScale / view.getViewportScaleFactorX();
+		final float scaleY = mSnapshotScale / view.getViewportScaleFactorY();
+		final int left = mSnapshotLeft
+				+ Math.round(Math.max(0, view.getScrollX()) * scaleX);
+		final int top = mSnapshotTop
+				+ Math.round(Math.max(0, view.getScrollY()) * scaleY);
+		final int right = Math.min(mSnapshotLeft + mSnapshot.getWidth(),
+				left + Math.round(view.getWidth() * scaleX));
+		final int bottom = Math.min(mSnapshotTop + mSnapshot.getHeight(), top
+				+ Math.round(view.getHeight() * scaleY));
+		mViewportRect.set(left, top, right, bottom);
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		mSnapshotValid = false;
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		mAttached = true;
+		registerListeners();
+		// changes while detached were not reported
+		refresh();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		mAttached = false;
+		unregisterListeners();
+		if (mSnapshot != null) {
+			mSnapshot.recycle();
+		}
+		dropSnapshot();
+		super.onDetachedFromWindow();
+	}
+
+	/**
+	 * Forgets snapshot without recycling, last recorded display list may
+	 * still draw it
+	 */
+	private void dropSnapshot() {
+		mSnapshot = null;
+		mSnapshotCanvas = null;
+		mSnapshotValid = false;
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		final ScrollableView view = mScrollableView;
+		if (view == null) {
+			return;
+		}
+		if (mSnapshotValid
+				&& (mSnapshotWorksheetWidth != view.getWorksheetWidth() || mSnapshotWorksheetHeight != view
+						.getWorksheetHeight())) {
+			mSnapshotValid = false;
+		}
+		if (!mSnapshotValid && !renderSnapshot(view)) {
+			return;
+		}
+		if (!mSnapshotDirty.isEmpty()) {
+			renderSnapshotPart(view, mSnapshotDirty);
+			mSnapshotDirty.setEmpty();
+		}
+		canvas.drawBitmap(mSnapshot, mSnapshotLeft, mSnapshotTop, null);
+		if (!mViewportRect.isEmpty()) {
+			canvas.drawRect(mViewportRect, mViewportPaint);
+			canvas.drawRect(mViewportRect, mViewportStrokePaint);
+		}
+	}
+
+	/**
+	 * @return false if there is nothing to draw
+	 */
+	private boolean renderSnapshot(ScrollableView view) {
+		final int worksheetWidth = view.getWorksheetWidth();
+		final int worksheetHeight = view.getWorksheetHeight();
+		final int availableWidth = getWidth() - getPaddingLeft()
+				- getPaddingRight();
+		final int availableHeight = getHeight() - getPaddingTop()
+				- getPaddingBottom();
+		if (worksheetWidth <= 0 || worksheetHeight <= 0 || availableWidth <= 0
+				|| availableHeight <= 0) {
+			dropSnapshot();
+			return false;
+		}
+		final float scale = Math.min((float) availableWidth / worksheetWidth,
+				(float) availableHeight / worksheetHeight);
+		final int width = Math.max(1, Math.round(worksheetWidth * scale));
+		final int height = Math.max(1, Math.round(worksheetHeight * scale));
+		if (mSnapshot == null || mSnapshot.getWidth() != width
+				|| mSnapshot.getHeight() != height) {
+			dropSnapshot();
+			mSnapshot = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			mSnapshotCanvas = new Canvas(mSnapshot);
+		}
+		mSnapshotScale = scale;
+		mSnapshotLeft = getPaddingLeft() + (availableWidth - width) / 2;
+		mSnapshotTop = getPaddingTop() + (availableHeight - height) / 2;
+		mSnapshotWorksheetWidth = worksheetWidth;
+		mSnapshotWorksheetHeight = worksheetHeight;
+		mSnapshot.eraseColor(0);
+		view.drawScaled(mSnapshotCanvas, 0, 0, width, height, scale);
+		mSnapshotDirty.setEmpty();
+		mSnapshotValid = true;
+		computeViewportRect();
+		return true;
+	}
+
+	private void renderSnapshotPart(ScrollableView view, Rect dirty) {
+		if (!dirty.intersect(0, 0, mSnapshot.getWidth(), mSnapshot.getHeight())) {
+			return;
+		}
+		final Canvas canvas = mSnapshotCanvas;
+		final int restoreCount = canvas.save();
+		canvas.clipRect(dirty);
+		canvas.drawColor(0, PorterDuff.Mode.CLEAR);
+		view.drawScaled(canvas, dirty.left, dirty.top, dirty.right,
+				dirty.bottom, mSnapshotScale);
+		canvas.restoreToCount(restoreCount);
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (mScrollableView == null || !mSnapshotValid) {
+			return false;
+		}
+		final float x = event.getX();
+		final float y = event.getY();
+		switch (event.getAction() & MotionEvent.ACTION_MASK) {
+		case MotionEvent.ACTION_DOWN:
+			mDragging = true;
+			// dragging viewport keeps finger where it grabbed it, touching
+			// outside centers viewport under finger
+			if (mViewportRect.contains((int) x, (int) y)) {
+				mGrabOffsetX = x - mViewportRect.exactCenterX();
+				mGrabOffsetY = y - mViewportRect.exactCenterY();
+			} else {
+				mGrabOffsetX = 0.0f;
+				mGrabOffsetY = 0.0f;
+			}
+			scrollToMinimapPoint(x - mGrabOffsetX, y - mGrabOffsetY);
+			return true;
+		case MotionEvent.ACTION_MOVE:
+			if (mDragging) {
+				scrollToMinimapPoint(x - mGrabOffsetX, y - mGrabOffsetY);
+			}
+			return true;
+		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			mDragging = false;
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Smoothly scrolls main view so point of minimap is in center of its
+	 * viewport
+	 */
+	private void scrollToMinimapPoint(float x, float y) {
+		final ScrollableView view = mScrollableView;
+		final float worksheetX = (x - mSnapshotLeft) / mSnapshotScale;
+		final float worksheetY = (y - mSnapshotTop) / mSnapshotScale;
+		final int scrollX = Math.round(worksheetX
+				* view.getViewportScaleFactorX() - view.getWidth() / 2.0f);
+		final int scrollY = Math.round(worksheetY
+				* view.getViewportScaleFactorY() - view.getHeight() / 2.0f);
+		view.smoothScrollTo(scrollX, scrollY);
+	}
+}
@@ -70,6 +70,32 @@ public class OverScrollerCompat {
         return x;
     }
 
+    /**
+     * Source of animation time, replaced by gesture replay in tests to step
+     * scrolling with its own frame clock.
+     */
+    interface AnimationClock {
+        long currentAnimationTimeMillis();
+    }
+
+    private static AnimationClock sAnimationClock = null;
+
+    /**
+     * @param clock clock used by all scrollers, null restores
+     * {@link AnimationUtils#currentAnimationTimeMillis()}
+     */
+    static void setAnimationClock(AnimationClock clock) {
+        sAnimationClock = clock;
+    }
+
+    static long currentAnimationTimeMillis() {
+        final AnimationClock clock = sAnimationClock;
+        if (clock != null) {
+            return clock.currentAnimationTimeMillis();
+        }
+        return AnimationUtils.currentAnimationTimeMillis();
+    }
+
     /**
      * Creates an OverScroller with a viscous fluid scroll interpolator and flywheel.
      * @param context
@@ -324,7 +350,7 @@ public class OverScrollerCompat {
 
         switch (mMode) {
             case SCROLL_MODE:
-                long time = AnimationUtils.currentAnimationTimeMillis();
+                long time = currentAnimationTimeMillis();
                 // Any scroller can be used for time, since they were started
                 // together in scroll mode. We use X here.
                 final long elapsedTime = time - mScrollerX.mStartTime;
@@ -477,6 +503,32 @@ public class OverScrollerCompat {
         mScrollerY.fling(startY, velocityY, minY, maxY, overY);
     }
 
+    /**
+     * Returns the distance a fling started with given velocity travels before
+     * it stops, ignoring bounds.
+     *
+     * @param velocity Initial velocity in pixels per second.
+     * @return Signed distance in pixels.
+     */
+    public int getFlingDistance(int velocity) {
+        if (velocity == 0) {
+            return 0;
+        }
+        return (int) (mScrollerX.getSplineFlingDistance(velocity) * Math.signum(velocity));
+    }
+
+    /**
+     * Returns the initial velocity with which a fling stops after given
+     * distance. Combine with {@link #setFinalX(int)} or {@link #setFinalY(int)}
+     * to remove rounding error without altering the deceleration.
+     *
+     * @param distance Signed distance in pixels.
+     * @return Signed velocity in pixels per second.
+     */
+    public int getFlingVelocity(int distance) {
+        return mScrollerX.getSplineFlingVelocity(distance);
+    }
+
     /**
      * Notify the scroller that we've reached a horizontal boundary.
      * Normally the information to handle this will already be known
@@ -551,7 +603,7 @@ public class OverScrollerCompat {
      * @hide
      */
     public int timePassed() {
-        final long time = AnimationUtils.currentAnimationTimeMillis();
+        final long time = currentAnimationTimeMillis();
         final long startTime = Math.min(mScrollerX.mStartTime, mScrollerY.mStartTime);
         return (int) (time - startTime);
     }
@@ -663,8 +715,16 @@ public class OverScrollerCompat {
             SPLINE_POSITION[NB_SAMPLES] = SPLINE_TIME[NB_SAMPLES] = 1.0f;
         }
 
+        // Density PHYSICAL_COEF was computed for, shared by all scrollers
+        private static float sDensity = 0.0f;
+
         static void initFromContext(Context context) {
-            final float ppi = context.getResources().getDisplayMetrics().density * 160.0f;
+            final float density = context.getResources().getDisplayMetrics().density;
+            if (density == sDensity) {
+                return;
+            }
+            sDensity = density;
+            final float ppi = density * 160.0f;
             PHYSICAL_COEF = SensorManager.GRAVITY_EARTH // g (m/s^2)
                     * 39.37f // inch/meter
                     * ppi
@@ -715,7 +775,7 @@ public class OverScrollerCompat {
             mStart = start;
             mFinal = start + distance;
 
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = currentAnimationTimeMillis();
             mDuration = duration;
 
             // Unused
@@ -733,11 +793,15 @@ public class OverScrollerCompat {
 
         void setFinalPosition(int position) {
             mFinal = position;
+            if (mState == SPLINE) {
+                // keep fling curve ending exactly at new final position
+                mSplineDistance = mFinal - mStart;
+            }
             mFinished = false;
         }
 
         void extendDuration(int extend) {
-            final long time = AnimationUtils.currentAnimationTimeMillis();
+            final long time = currentAnimationTimeMillis();
             final int elapsedTime = (int) (time - mStartTime);
             mDuration = elapsedTime + extend;
             mFinished = false;
@@ -749,7 +813,7 @@ public class OverScrollerCompat {
             mStart = mFinal = start;
             mVelocity = 0;
 
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = currentAnimationTimeMillis();
             mDuration = 0;
 
             if (start < min) {
@@ -782,7 +846,7 @@ public class OverScrollerCompat {
             mFinished = false;
             mCurrVelocity = mVelocity = velocity;
             mDuration = mSplineDuration = 0;
-            mStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mStartTime = currentAnimationTimeMillis();
             mCurrentPosition = mStart = start;
 
             if (start > max || start < min) {
@@ -817,7 +881,21 @@ public class OverScrollerCompat {
             return Math.log(INFLEXION * Math.abs(velocity) / (mFlingFriction * PHYSICAL_COEF));
         }
 
-        private double getSplineFlingDistance(int velocity) {
+        /*
+         * Inverse of getSplineFlingDistance(), returns signed velocity.
+         */
+        int getSplineFlingVelocity(int distance) {
+            if (distance == 0) {
+                return 0;
+            }
+            final double decelMinusOne = DECELERATION_RATE - 1.0;
+            final double l = Math.log(Math.abs(distance) / (mFlingFriction * PHYSICAL_COEF))
+                    * decelMinusOne / DECELERATION_RATE;
+            final double velocity = mFlingFriction * PHYSICAL_COEF * Math.exp(l) / INFLEXION;
+            return (int) Math.round(velocity * Math.signum(distance));
+        }
+
+        double getSplineFlingDistance(int velocity) {
             final double l = getSplineDeceleration(velocity);
             final double decelMinusOne = DECELERATION_RATE - 1.0;
             return mFlingFriction * PHYSICAL_COEF * Math.exp(DECELERATION_RATE / decelMinusOne * l);
@@ -875,7 +953,7 @@ public class OverScrollerCompat {
             // mState is used to detect successive notifications 
             if (mState == SPLINE) {
                 mOver = over;
-                mStartTime = AnimationUtils.currentAnimationTimeMillis();
+                mStartTime = currentAnimationTimeMillis();
                 // We were in fling/scroll mode before: current velocity is such that distance to
                 // edge is increasing. This ensures that startAfterEdge will not start a new fling.
                 startAfterEdge(start, end, end, (int) mCurrVelocity);
@@ -934,7 +1012,7 @@ public class OverScrollerCompat {
          * reached.
          */
         boolean update() {
-            final long time = AnimationUtils.currentAnimationTimeMillis();
+            final long time = currentAnimationTimeMillis();
             final long currentTime = time - mStartTime;
 
             if (currentTime > mDuration) {
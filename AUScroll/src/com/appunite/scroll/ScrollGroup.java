@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.ArrayList;
+
+import android.support.v4.view.ViewCompat;
+
+/**
+ * Keeps scroll position of several {@link ScrollableView}s in sync, i.e.
+ * frozen header row, frozen column and body of a spreadsheet.
+ *
+ * View that was touched last drives the group: only its scroller is advanced,
+ * once per frame in animation callback before drawing, and its position is
+ * copied to other members on their locked axes, so all of them are redrawn
+ * in the same frame. Scroll offsets are copied as they are, so members should
+ * use the same scale.
+ */
+public class ScrollGroup {
+
+	public static final int AXIS_X = 1;
+	public static final int AXIS_Y = 2;
+	public static final int AXIS_BOTH = AXIS_X | AXIS_Y;
+
+	private final ArrayList<ScrollableView> mMembers = new ArrayList<ScrollableView>();
+	private boolean mSyncing = false;
+	private boolean mFrameScheduled = false;
+	private final Runnable mFrameRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			doFrame();
+		}
+	};
+	private ScrollableView mFrameHost = null;
+
+	/**
+	 * @param axes
+	 *            combination of {@link #AXIS_X} and {@link #AXIS_Y} on which
+	 *            view follows the group
+	 */
+	public void add(ScrollableView view, int axes) {
+		if (view.getScrollGroup() != null) {
+			throw new IllegalStateException("View already in a scroll group");
+		}
+		view.setScrollGroup(this, axes);
+		mMembers.add(view);
+	}
+
+	public void remove(ScrollableView view) {
+		if (mMembers.remove(view)) {
+			view.setScrollGroup(null, 0);
+			if (mFrameHost == view && mFrameScheduled) {
+				view.removeCallbacks(mFrameRunnable);
+				mFrameScheduled = false;
+				mFrameHost = null;
+				if (!mMembers.isEmpty()) {
+					requestFrame(mMembers.get(0));
+				}
+			}
+		}
+	}
+
+	void requestFrame(ScrollableView host) {
+		if (mFrameScheduled) {
+			return;
+		}
+		mFrameScheduled = true;
+		mFrameHost = host;
+		ViewCompat.postOnAnimation(host, mFrameRunnable);
+	}
+
+	private void doFrame() {
+		mFrameScheduled = false;
+		final ArrayList<ScrollableView> members = mMembers;
+		ScrollableView running = null;
+		for (int i = 0; i < members.size(); i++) {
+			final ScrollableView member = members.get(i);
+			if (!member.isScrollFinished()) {
+				member.stepScroll();
+				if (!member.isScrollFinished()) {
+					running = member;
+				}
+			}
+		}
+		if (running != null) {
+			requestFrame(running);
+		}
+	}
+
+	void onMemberTouchDown(ScrollableView source) {
+		final ArrayList<ScrollableView> members = mMembers;
+		for (int i = 0; i < members.size(); i++) {
+			final ScrollableView member = members.get(i);
+			if (member != source) {
+				member.abortScrollAnimation();
+			}
+		}
+	}
+
+	void onMemberScrolled(ScrollableView source) {
+		if (mSyncing) {
+			return;
+		}
+		mSyncing = true;
+		try {
+			final int scrollX = source.getScrollX();
+			final int scrollY = source.getScrollY();
+			final int axes = source.getScrollGroupAxes();
+			final ArrayList<ScrollableView> members = mMembers;
+			for (int i = 0; i < members.size(); i++) {
+				final ScrollableView member = members.get(i);
+				if (member != source) {
+					member.syncScroll(scrollX, scrollY, axes);
+				}
+			}
+		} finally {
+			mSyncing = false;
+		}
+	}
+}
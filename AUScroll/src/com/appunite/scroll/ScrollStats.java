@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+/**
+ * Counters of work done by {@link ScrollableView} in touch, scroller and
+ * draw paths. Attached with {@link ScrollableView#setScrollStats(ScrollStats)}
+ * and updated on UI thread.
+ */
+public class ScrollStats {
+
+	int mOverScrollCount;
+	int mInvalidateCount;
+	int mFrameRequestCount;
+	int mComputeScrollCount;
+	long mComputeScrollNanos;
+	int mDrawCount;
+	long mDrawNanos;
+
+	public void reset() {
+		mOverScrollCount = 0;
+		mInvalidateCount = 0;
+		mFrameRequestCount = 0;
+		mComputeScrollCount = 0;
+		mComputeScrollNanos = 0;
+		mDrawCount = 0;
+		mDrawNanos = 0;
+	}
+
+	public void set(ScrollStats other) {
+		mOverScrollCount = other.mOverScrollCount;
+		mInvalidateCount = other.mInvalidateCount;
+		mFrameRequestCount = other.mFrameRequestCount;
+		mComputeScrollCount = other.mComputeScrollCount;
+		mComputeScrollNanos = other.mComputeScrollNanos;
+		mDrawCount = other.mDrawCount;
+		mDrawNanos = other.mDrawNanos;
+	}
+
+	/**
+	 * @return number of overScrollBy() calls
+	 */
+	public int getOverScrollCount() {
+		return mOverScrollCount;
+	}
+
+	/**
+	 * @return number of invalidate() calls
+	 */
+	public int getInvalidateCount() {
+		return mInvalidateCount;
+	}
+
+	/**
+	 * @return number of animation frames requested by scrolling
+	 */
+	public int getFrameRequestCount() {
+		return mFrameRequestCount;
+	}
+
+	public int getComputeScrollCount() {
+		return mComputeScrollCount;
+	}
+
+	public long getComputeScrollNanos() {
+		return mComputeScrollNanos;
+	}
+
+	public int getDrawCount() {
+		return mDrawCount;
+	}
+
+	public long getDrawNanos() {
+		return mDrawNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ScrollStats [overScroll=" + mOverScrollCount
+				+ ", invalidate=" + mInvalidateCount + ", frameRequests="
+				+ mFrameRequestCount + ", computeScroll="
+				+ mComputeScrollCount + "/" + mComputeScrollNanos / 1000
+				+ "us, draw=" + mDrawCount + "/" + mDrawNanos / 1000 + "us]";
+	}
+}
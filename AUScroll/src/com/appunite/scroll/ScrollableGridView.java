@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+/**
+ * Grid of cells with variable row heights and column widths. Sizes are kept
+ * in {@link SizeIndex}, so worksheet size, cell lookup and visible range are
+ * O(log n) and only visible cells are drawn.
+ */
+public abstract class ScrollableGridView extends ScrollableScalableView {
+
+	private final SizeIndex mRows = new SizeIndex();
+	private final SizeIndex mColumns = new SizeIndex();
+
+	private ItemRecycler<?> mCellRecycler = null;
+	// cells in window are in frozen or scrolled rows and columns
+	private int mWindowFrozenRows = 0;
+	private int mWindowFirstRow = 0;
+	private int mWindowLastRow = -1;
+	private int mWindowFrozenColumns = 0;
+	private int mWindowFirstColumn = 0;
+	private int mWindowLastColumn = -1;
+	// cell outside window was bound, i.e. by drawScaled, window has to be
+	// scanned
+	private boolean mStrayCells = false;
+
+	private int mTouchedRow = -1;
+	private int mTouchedColumn = -1;
+
+	public ScrollableGridView(Context context) {
+		this(context, null, 0);
+	}
+
+	public ScrollableGridView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public ScrollableGridView(Context context, AttributeSet attrs,
+			int defStyle) {
+		super(context, attrs, defStyle);
+	}
+
+	/**
+	 * Draws single cell. Canvas is already scaled and translated, rectangle
+	 * is cell position on canvas in worksheet units.
+	 */
+	protected abstract void onDrawCell(Canvas canvas, int row, int column,
+			float left, float top, float right, float bottom);
+
+	protected boolean onCellTouchDown(int row, int column) {
+		return false;
+	}
+
+	protected void onCellClick(int row, int column) {
+	}
+
+	protected void onCellTouchCanceled(int row, int column) {
+	}
+
+	public void setRowCount(int count, int defaultHeight) {
+		mRows.reset(count, defaultHeight);
+		onGridSizeChanged();
+	}
+
+	public void setColumnCount(int count, int defaultWidth) {
+		mColumns.reset(count, defaultWidth);
+		onGridSizeChanged();
+	}
+
+	public void setRowHeight(int row, int height) {
+		mRows.setSize(row, height);
+		onGridSizeChanged();
+	}
+
+	public void setColumnWidth(int column, int width) {
+		mColumns.setSize(column, width);
+		onGridSizeChanged();
+	}
+
+	private void onGridSizeChanged() {
+		if (mCellRecycler != null) {
+			mCellRecycler.recycleAll();
+			clearCellRecyclerWindow();
+			updateCellRecyclerWindow();
+		}
+		awakenScrollBars();
+		invalidateContent();
+	}
+
+	/**
+	 * Lets grid move visible window of recycler with scroll and scale, so
+	 * holders of cells that scrolled out are reused by cells that scroll in
+	 */
+	public void setCellRecycler(ItemRecycler<?> recycler) {
+		mCellRecycler = recycler;
+		clearCellRecyclerWindow();
+		// holders bound before are unknown to window
+		mStrayCells = true;
+		updateCellRecyclerWindow();
+	}
+
+	/**
+	 * @return holder for cell from recycler, should be called from
+	 *         {@link #onDrawCell(Canvas, int, int, float, float, float, float)}
+	 */
+	protected <H> H obtainCellHolder(ItemRecycler<H> recycler, int row,
+			int column, int type) {
+		final long left = mColumns.getOffset(column);
+		final long top = mRows.getOffset(row);
+		if (recycler == mCellRecycler
+				&& !(isRowInWindow(row) && isColumnInWindow(column))) {
+			mStrayCells = true;
+		}
+		return recycler.obtain(getCellId(row, column), type, left, top, left
+				+ mColumns.getSize(column), top + mRows.getSize(row));
+	}
+
+	public long getCellId(int row, int column) {
+		return (long) row * mColumns.getCount() + column;
+	}
+
+	@Override
+	protected void publishViewport() {
+		super.publishViewport();
+		updateCellRecyclerWindow();
+	}
+
+	/**
+	 * Recycles holders of cells in rows and columns that left window, cost
+	 * depends on number of cells that left, not on size of grid
+	 */
+	private void updateCellRecyclerWindow() {
+		final ItemRecycler<?> recycler = mCellRecycler;
+		if (recycler == null) {
+			return;
+		}
+		final float scaleFactorX = getScaleFactorX();
+		final float scaleFactorY = getScaleFactorY();
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final float left = scrollX / scaleFactorX;
+		final float top = scrollY / scaleFactorY;
+		final float right = (scrollX + getWidth()) / scaleFactorX;
+		final float bottom = (scrollY + getHeight()) / scaleFactorY;
+		final int frozenLeft = getFrozenLeftWidth();
+		final int frozenTop = getFrozenTopHeight();
+
+		final int oldFrozenRows = mWindowFrozenRows;
+		final int oldFirstRow = mWindowFirstRow;
+		final int oldLastRow = mWindowLastRow;
+		final int oldFrozenColumns = mWindowFrozenColumns;
+		final int oldFirstColumn = mWindowFirstColumn;
+		final int oldLastColumn = mWindowLastColumn;
+		if (mRows.getCount() == 0 || mColumns.getCount() == 0) {
+			clearCellRecyclerWindow();
+		} else {
+			mWindowFrozenRows = frozenTop > 0 ? mRows
+					.getIndexAt(frozenTop - 1) + 1 : 0;
+			mWindowFirstRow = mRows.getIndexAt((long) top);
+			mWindowLastRow = getLastIndexBefore(mRows, bottom);
+			mWindowFrozenColumns = frozenLeft > 0 ? mColumns
+					.getIndexAt(frozenLeft - 1) + 1 : 0;
+			mWindowFirstColumn = mColumns.getIndexAt((long) left);
+			mWindowLastColumn = getLastIndexBefore(mColumns, right);
+		}
+
+		if (mStrayCells) {
+			mStrayCells = false;
+			recycler.setVisibleWindow(left, top, right, bottom, frozenLeft,
+					frozenTop);
+			return;
+		}
+		if (oldFrozenRows == mWindowFrozenRows
+				&& oldFirstRow == mWindowFirstRow
+				&& oldLastRow == mWindowLastRow
+				&& oldFrozenColumns == mWindowFrozenColumns
+				&& oldFirstColumn == mWindowFirstColumn
+				&& oldLastColumn == mWindowLastColumn) {
+			return;
+		}
+		final int oldRowEnd = Math.max(oldLastRow, oldFrozenRows - 1);
+		final int oldColumnEnd = Math.max(oldLastColumn, oldFrozenColumns - 1);
+		// cells of columns that left, in all rows that were in window
+		int column = nextInWindow(0, oldFrozenColumns, oldFirstColumn);
+		for (; column <= oldColumnEnd; column = nextInWindow(column + 1,
+				oldFrozenColumns, oldFirstColumn)) {
+			if (isColumnInWindow(column)) {
+				continue;
+			}
+			int row = nextInWindow(0, oldFrozenRows, oldFirstRow);
+			for (; row <= oldRowEnd; row = nextInWindow(row + 1,
+					oldFrozenRows, oldFirstRow)) {
+				recycler.recycleItem(getCellId(row, column));
+			}
+		}
+		// cells of rows that left, in columns that stayed
+		int row = nextInWindow(0, oldFrozenRows, oldFirstRow);
+		for (; row <= oldRowEnd; row = nextInWindow(row + 1, oldFrozenRows,
+				oldFirstRow)) {
+			if (isRowInWindow(row)) {
+				continue;
+			}
+			column = nextInWindow(0, oldFrozenColumns, oldFirstColumn);
+			for (; column <= oldColumnEnd; column = nextInWindow(column + 1,
+					oldFrozenColumns, oldFirstColumn)) {
+				if (isColumnInWindow(column)) {
+					recycler.recycleItem(getCellId(row, column));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return last item that starts before end, so item just touching end
+	 *         is neither drawn nor kept in recycler window
+	 */
+	private static int getLastIndexBefore(SizeIndex index, float end) {
+		return index.getIndexAt(Math.max(0, (long) Math.ceil(end) - 1));
+	}
+
+	/**
+	 * @return index if it is frozen or scrolled, otherwise first scrolled
+	 *         index
+	 */
+	private static int nextInWindow(int index, int frozenCount, int first) {
+		return index < frozenCount || index >= first ? index : first;
+	}
+
+	private boolean isRowInWindow(int row) {
+		return row < mWindowFrozenRows
+				|| (row >= mWindowFirstRow && row <= mWindowLastRow);
+	}
+
+	private boolean isColumnInWindow(int column) {
+		return column < mWindowFrozenColumns
+				|| (column >= mWindowFirstColumn && column <= mWindowLastColumn);
+	}
+
+	private void clearCellRecyclerWindow() {
+		mWindowFrozenRows = 0;
+		mWindowFirstRow = 0;
+		mWindowLastRow = -1;
+		mWindowFrozenColumns = 0;
+		mWindowFirstColumn = 0;
+		mWindowLastColumn = -1;
+	}
+
+	public int getRowCount() {
+		return mRows.getCount();
+	}
+
+	public int getColumnCount() {
+		return mColumns.getCount();
+	}
+
+	public int getRowHeight(int row) {
+		return mRows.getSize(row);
+	}
+
+	public int getColumnWidth(int column) {
+		return mColumns.getSize(column);
+	}
+
+	public long getRowTop(int row) {
+		return mRows.getOffset(row);
+	}
+
+	public long getColumnLeft(int column) {
+		return mColumns.getOffset(column);
+	}
+
+	/**
+	 * @return row at worksheet position y or -1 if grid is empty
+	 */
+	public int getRowAt(float y) {
+		return mRows.getIndexAt((long) y);
+	}
+
+	/**
+	 * @return column at worksheet position x or -1 if grid is empty
+	 */
+	public int getColumnAt(float x) {
+		return mColumns.getIndexAt((long) x);
+	}
+
+	@Override
+	protected int getWorksheetWidth() {
+		return (int) Math.min(Integer.MAX_VALUE, mColumns.getTotal());
+	}
+
+	@Override
+	protected int getWorksheetHeight() {
+		return (int) Math.min(Integer.MAX_VALUE, mRows.getTotal());
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas, int left, int top, int right,
+			int bottom, float scaleFactorX, float scaleFactorY) {
+		if (mRows.getCount() == 0 || mColumns.getCount() == 0) {
+			return;
+		}
+		final int firstRow = mRows.getIndexAt((long) (top / scaleFactorY));
+		final int lastRow = getLastIndexBefore(mRows, bottom / scaleFactorY);
+		final int firstColumn = mColumns
+				.getIndexAt((long) (left / scaleFactorX));
+		final int lastColumn = getLastIndexBefore(mColumns, right
+				/ scaleFactorX);
+		final long originX = mColumns.getOffset(firstColumn);
+		final long originY = mRows.getOffset(firstRow);
+
+		// Translate to first visible cell so cell coordinates stay small
+		// enough for float precision on huge grids
+		final int restoreCount = canvas.save();
+		canvas.translate((float) (originX * (double) scaleFactorX),
+				(float) (originY * (double) scaleFactorY));
+		canvas.scale(scaleFactorX, scaleFactorY);
+		int cellTop = 0;
+		for (int row = firstRow; row <= lastRow; row++) {
+			final int cellBottom = cellTop + mRows.getSize(row);
+			int cellLeft = 0;
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				final int cellRight = cellLeft + mColumns.getSize(column);
+				onDrawCell(canvas, row, column, cellLeft, cellTop, cellRight,
+						cellBottom);
+				cellLeft = cellRight;
+			}
+			cellTop = cellBottom;
+		}
+		canvas.restoreToCount(restoreCount);
+	}
+
+	@Override
+	protected boolean onTouchDown(float touchX, float touchY) {
+		final int row = getRowAt(touchY);
+		final int column = getColumnAt(touchX);
+		if (row < 0 || column < 0 || !onCellTouchDown(row, column)) {
+			return false;
+		}
+		mTouchedRow = row;
+		mTouchedColumn = column;
+		return true;
+	}
+
+	@Override
+	protected boolean onTouchMove(float touchX, float touchY) {
+		return getRowAt(touchY) == mTouchedRow
+				&& getColumnAt(touchX) == mTouchedColumn;
+	}
+
+	@Override
+	protected void onTouchClick(float touchX, float touchY) {
+		onCellClick(mTouchedRow, mTouchedColumn);
+	}
+
+	@Override
+	protected void onTouchCanceled(float touchX, float touchY) {
+		onCellTouchCanceled(mTouchedRow, mTouchedColumn);
+	}
+}
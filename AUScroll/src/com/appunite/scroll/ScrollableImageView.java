@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+import android.util.AttributeSet;
+import android.util.Log;
+
+/**
+ * Viewer of images much bigger than heap (scans, floor plans, microscopy).
+ *
+ * Only visible tiles are decoded with {@link BitmapRegionDecoder}, at the
+ * biggest power of two sample size that still gives at least one image pixel
+ * per screen pixel. Tiles are decoded in background and kept in memory
+ * bounded LRU cache; until they arrive low resolution preview of whole image
+ * is drawn in their place.
+ *
+ * Requires API 10. Call {@link #setImagePath(String)} with null to release
+ * decoder.
+ */
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+public class ScrollableImageView extends ScrollableScalableView {
+
+	private static final String TAG = ScrollableImageView.class
+			.getCanonicalName();
+
+	private static final int TILE_SIZE = 256;
+	private static final int PREVIEW_SIZE = 1024;
+
+	private static InteractionAwareExecutor sDefaultExecutor;
+
+	private InteractionAwareExecutor mExecutor;
+
+	private BitmapRegionDecoder mDecoder;
+	private int mImageWidth = 0;
+	private int mImageHeight = 0;
+	private int mImageGeneration = 0;
+	private Bitmap mPreview;
+	// raised when tiles do not fit in memory, read by decode jobs
+	private volatile int mMinSampleSize = 1;
+
+	private final LruCache<TileKey, Bitmap> mTiles;
+	private final HashSet<TileKey> mPendingTiles = new HashSet<TileKey>();
+	private final TileKey mLookupKey = new TileKey();
+
+	private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private final RectF mDrawRect = new RectF();
+
+	public ScrollableImageView(Context context) {
+		this(context, null, 0);
+	}
+
+	public ScrollableImageView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public ScrollableImageView(Context context, AttributeSet attrs,
+			int defStyle) {
+		super(context, attrs, defStyle);
+		final int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 4);
+		mTiles = new LruCache<TileKey, Bitmap>(maxKilobytes) {
+
+			@Override
+			protected int sizeOf(TileKey key, Bitmap value) {
+				return value.getRowBytes() * value.getHeight() / 1024;
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, TileKey key,
+					Bitmap oldValue, Bitmap newValue) {
+				// not recycled: with hardware acceleration display list may
+				// still reference evicted tile, it is reclaimed by GC instead
+			}
+		};
+		setDecodeExecutor(getDefaultExecutor());
+	}
+
+	private static synchronized InteractionAwareExecutor getDefaultExecutor() {
+		if (sDefaultExecutor == null) {
+			sDefaultExecutor = new InteractionAwareExecutor(2);
+		}
+		return sDefaultExecutor;
+	}
+
+	/**
+	 * Sets executor decoding tiles, by default one shared by all image views
+	 * is used
+	 */
+	public void setDecodeExecutor(InteractionAwareExecutor executor) {
+		if (mExecutor != null) {
+			mExecutor.removeView(this);
+		}
+		mExecutor = executor;
+		addOnInteractionStateChangeListener(executor);
+		if (getInteractionState() != INTERACTION_IDLE) {
+			executor.onInteractionStateChanged(this, INTERACTION_IDLE,
+					getInteractionState(), getInteractionStateStartTime());
+		}
+	}
+
+	/**
+	 * Opens image in background, null releases current image
+	 */
+	public void setImagePath(final String path) {
+		releaseImage();
+		if (path == null) {
+			return;
+		}
+		final int generation = mImageGeneration;
+		mExecutor.executeUrgent(new Runnable() {
+
+			@Override
+			public void run() {
+				final BitmapRegionDecoder decoder;
+				try {
+					decoder = BitmapRegionDecoder.newInstance(path, false);
+				} catch (IOException e) {
+					Log.e(TAG, "Could not open image " + path, e);
+					return;
+				}
+				final Bitmap preview = decodePreview(decoder);
+				post(new Runnable() {
+
+					@Override
+					public void run() {
+						onImageOpened(generation, decoder, preview);
+					}
+				});
+			}
+		});
+	}
+
+	public int getImageWidth() {
+		return mImageWidth;
+	}
+
+	public int getImageHeight() {
+		return mImageHeight;
+	}
+
+	private static Bitmap decodePreview(BitmapRegionDecoder decoder) {
+		final int width = decoder.getWidth();
+		final int height = decoder.getHeight();
+		int sampleSize = 1;
+		while (Math.max(width, height) / sampleSize > PREVIEW_SIZE) {
+			sampleSize <<= 1;
+		}
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		try {
+			return decoder.decodeRegion(new Rect(0, 0, width, height), options);
+		} catch (OutOfMemoryError e) {
+			Log.w(TAG, "No memory for preview", e);
+			return null;
+		}
+	}
+
+	private void onImageOpened(int generation, BitmapRegionDecoder decoder,
+			Bitmap preview) {
+		if (generation != mImageGeneration) {
+			// other image was set in the meantime
+			if (preview != null) {
+				preview.recycle();
+			}
+			recycleDecoder(decoder);
+			return;
+		}
+		mDecoder = decoder;
+		mPreview = preview;
+		mImageWidth = decoder.getWidth();
+		mImageHeight = decoder.getHeight();
+		scrollTo(0, 0);
+		publishViewport();
+		awakenScrollBars();
+		invalidateContent();
+	}
+
+	private void releaseImage() {
+		mImageGeneration += 1;
+		mTiles.evictAll();
+		mPendingTiles.clear();
+		mMinSampleSize = 1;
+		// preview may be referenced by display list, left for GC
+		mPreview = null;
+		if (mDecoder != null) {
+			recycleDecoder(mDecoder);
+			mDecoder = null;
+		}
+		mImageWidth = 0;
+		mImageHeight = 0;
+		invalidateContent();
+	}
+
+	private void recycleDecoder(final BitmapRegionDecoder decoder) {
+		// decoder may be in the middle of decoding tile
+		mExecutor.executeUrgent(new Runnable() {
+
+			@Override
+			public void run() {
+				synchronized (decoder) {
+					decoder.recycle();
+				}
+			}
+		});
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		mTiles.evictAll();
+		mPendingTiles.clear();
+	}
+
+	@Override
+	protected int getWorksheetWidth() {
+		return mImageWidth;
+	}
+
+	@Override
+	protected int getWorksheetHeight() {
+		return mImageHeight;
+	}
+
+	/**
+	 * @return biggest power of two sample size that keeps at least one image
+	 *         pixel per screen pixel
+	 */
+	private static int sampleSizeFor(float scaleFactor) {
+		int sampleSize = 1;
+		while (sampleSize * 2 * scaleFactor <= 1.0f) {
+			sampleSize <<= 1;
+		}
+		return sampleSize;
+	}
+
+	private int tileSampleSize(float scaleFactorX, float scaleFactorY) {
+		return Math.max(mMinSampleSize,
+				sampleSizeFor(Math.max(scaleFactorX, scaleFactorY)));
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas, int left, int top, int right,
+			int bottom, float scaleFactorX, float scaleFactorY) {
+		if (mDecoder == null) {
+			return;
+		}
+		final int sampleSize = tileSampleSize(scaleFactorX, scaleFactorY);
+		final int tileSize = TILE_SIZE * sampleSize;
+		final int firstColumn = Math.max(0, (int) (left / scaleFactorX)
+				/ tileSize);
+		final int lastColumn = Math.min((mImageWidth - 1) / tileSize,
+				(int) (right / scaleFactorX) / tileSize);
+		final int firstRow = Math.max(0, (int) (top / scaleFactorY) / tileSize);
+		final int lastRow = Math.min((mImageHeight - 1) / tileSize,
+				(int) (bottom / scaleFactorY) / tileSize);
+
+		boolean missing = false;
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				mLookupKey.set(sampleSize, column, row);
+				if (mTiles.get(mLookupKey) == null) {
+					missing = true;
+					requestTile(sampleSize, column, row);
+				}
+			}
+		}
+		if (missing && mPreview != null) {
+			mDrawRect.set(0, 0, mImageWidth * scaleFactorX, mImageHeight
+					* scaleFactorY);
+			canvas.drawBitmap(mPreview, null, mDrawRect, mBitmapPaint);
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				mLookupKey.set(sampleSize, column, row);
+				final Bitmap tile = mTiles.get(mLookupKey);
+				if (tile == null) {
+					continue;
+				}
+				final int tileLeft = column * tileSize;
+				final int tileTop = row * tileSize;
+				mDrawRect.set(tileLeft * scaleFactorX, tileTop * scaleFactorY,
+						Math.min(mImageWidth, tileLeft + tileSize)
+								* scaleFactorX,
+						Math.min(mImageHeight, tileTop + tileSize)
+								* scaleFactorY);
+				canvas.drawBitmap(tile, null, mDrawRect, mBitmapPaint);
+			}
+		}
+	}
+
+	private void requestTile(int sampleSize, int column, int row) {
+		if (mPendingTiles.contains(mLookupKey)) {
+			return;
+		}
+		final TileKey key = new TileKey();
+		key.set(sampleSize, column, row);
+		mPendingTiles.add(key);
+		mExecutor.executeUrgent(new DecodeTileJob(mDecoder, mImageGeneration,
+				key));
+	}
+
+	private void onTileDecoded(int generation, TileKey key, Bitmap tile) {
+		if (generation != mImageGeneration || !mPendingTiles.remove(key)) {
+			// image changed or view was detached
+			if (tile != null) {
+				tile.recycle();
+			}
+			return;
+		}
+		if (tile == null) {
+			return;
+		}
+		mTiles.put(key, tile);
+		if (key.mSampleSize == tileSampleSize(getScaleFactorX(),
+				getScaleFactorY())) {
+			final int tileSize = TILE_SIZE * key.mSampleSize;
+			notifyContentChanged(key.mColumn * tileSize, key.mRow * tileSize,
+					(key.mColumn + 1) * tileSize, (key.mRow + 1) * tileSize,
+					getContentVersion() + 1);
+		}
+	}
+
+	private void onTileOutOfMemory(int generation, TileKey key) {
+		mPendingTiles.remove(key);
+		if (generation != mImageGeneration) {
+			return;
+		}
+		mTiles.trimToSize(mTiles.size() / 2);
+		if (TILE_SIZE * key.mSampleSize >= Math.max(mImageWidth, mImageHeight)) {
+			// no coarser level, preview stays in place of tile
+			return;
+		}
+		// retry at lower resolution, coarser tile covers failed one
+		mMinSampleSize = Math.max(mMinSampleSize, key.mSampleSize * 2);
+		mLookupKey.set(key.mSampleSize * 2, key.mColumn / 2, key.mRow / 2);
+		requestTile(mLookupKey.mSampleSize, mLookupKey.mColumn,
+				mLookupKey.mRow);
+		invalidateContent();
+	}
+
+	/**
+	 * @return true if tile is still visible in latest published viewport
+	 */
+	private boolean isTileWanted(TileKey key) {
+		final Viewport viewport = getViewport();
+		if (viewport == null) {
+			return false;
+		}
+		final float scaleFactorX = viewport.getScaleFactorX();
+		final float scaleFactorY = viewport.getScaleFactorY();
+		if (tileSampleSize(scaleFactorX, scaleFactorY) != key.mSampleSize) {
+			return false;
+		}
+		final int tileSize = TILE_SIZE * key.mSampleSize;
+		final float left = viewport.getScrollX() / scaleFactorX;
+		final float top = viewport.getScrollY() / scaleFactorY;
+		final float right = left + viewport.getWidth() / scaleFactorX;
+		final float bottom = top + viewport.getHeight() / scaleFactorY;
+		final int tileLeft = key.mColumn * tileSize;
+		final int tileTop = key.mRow * tileSize;
+		return tileLeft < right && tileTop < bottom
+				&& tileLeft + tileSize > left && tileTop + tileSize > top;
+	}
+
+	private class DecodeTileJob implements Runnable {
+		private final BitmapRegionDecoder mJobDecoder;
+		private final int mGeneration;
+		private final TileKey mKey;
+
+		DecodeTileJob(BitmapRegionDecoder decoder, int generation, TileKey key) {
+			mJobDecoder = decoder;
+			mGeneration = generation;
+			mKey = key;
+		}
+
+		@Override
+		public void run() {
+			Bitmap tile = null;
+			boolean outOfMemory = false;
+			// tile scrolled away or scale changed before job started
+			if (isTileWanted(mKey)) {
+				final int tileSize = TILE_SIZE * mKey.mSampleSize;
+				final int left = mKey.mColumn * tileSize;
+				final int top = mKey.mRow * tileSize;
+				final BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inSampleSize = mKey.mSampleSize;
+				synchronized (mJobDecoder) {
+					if (!mJobDecoder.isRecycled()) {
+						final Rect region = new Rect(left, top, Math.min(
+								mJobDecoder.getWidth(), left + tileSize),
+								Math.min(mJobDecoder.getHeight(), top
+										+ tileSize));
+						try {
+							tile = mJobDecoder.decodeRegion(region, options);
+						} catch (OutOfMemoryError e) {
+							outOfMemory = true;
+						}
+					}
+				}
+			}
+			final Bitmap result = tile;
+			final boolean failed = outOfMemory;
+			post(new Runnable() {
+
+				@Override
+				public void run() {
+					if (failed) {
+						onTileOutOfMemory(mGeneration, mKey);
+					} else {
+						onTileDecoded(mGeneration, mKey, result);
+					}
+				}
+			});
+		}
+	}
+
+	private static final class TileKey {
+		int mSampleSize;
+		int mColumn;
+		int mRow;
+
+		void set(int sampleSize, int column, int row) {
+			mSampleSize = sampleSize;
+			mColumn = column;
+			mRow = row;
+		}
+
+		@Override
+		public int hashCode() {
+			return (mSampleSize * 31 + mColumn) * 31 + mRow;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TileKey)) {
+				return false;
+			}
+			final TileKey other = (TileKey) o;
+			return mSampleSize == other.mSampleSize
+					&& mColumn == other.mColumn && mRow == other.mRow;
+		}
+	}
+}
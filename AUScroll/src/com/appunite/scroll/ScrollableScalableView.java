@@ -17,7 +17,10 @@
 package com.appunite.scroll;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
@@ -34,6 +37,13 @@ public abstract class ScrollableScalableView extends ScrollableView implements O
 	private float mMaxScaleFactorX = 5.0f;
 	private float mMaxScaleFactorY = 5.0f;
 
+	private int mFrozenTopHeight = 0;
+	private int mFrozenLeftWidth = 0;
+	private final PaneCache mTopPaneCache = new PaneCache();
+	private final PaneCache mLeftPaneCache = new PaneCache();
+	private final PaneCache mCornerPaneCache = new PaneCache();
+	private final Rect mTmpPaneRect = new Rect();
+
 	public ScrollableScalableView(Context context) {
 		this(context, null, 0);
 	}
@@ -44,12 +54,14 @@ public abstract class ScrollableScalableView extends ScrollableView implements O
 
 	public ScrollableScalableView(Context context, AttributeSet attrs, int defStyle) {
 		super(context, attrs, defStyle);
-		
-		mScaleDetector = new ScaleGestureDetector(context, this);
 	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
+		// created on first touch, views that are never touched stay light
+		if (mScaleDetector == null) {
+			mScaleDetector = new ScaleGestureDetector(getContext(), this);
+		}
 		mScaleDetector.onTouchEvent(event);
 
 		final int action = event.getAction();
@@ -82,20 +94,347 @@ public abstract class ScrollableScalableView extends ScrollableView implements O
 	protected abstract void onDraw(Canvas canvas, int left, int top, int right, int bottom, float scaleFactorX, float scaleFactorY);
 	
 	protected final void onDraw(Canvas canvas, int left, int top, int right, int bottom) {
-		onDraw(canvas, left, top, right, bottom, mScaleFactorX, mScaleFactorY);
+		if (mFrozenTopHeight == 0 && mFrozenLeftWidth == 0) {
+			onDraw(canvas, left, top, right, bottom, mScaleFactorX, mScaleFactorY);
+			return;
+		}
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final int width = getWidth();
+		final int height = getHeight();
+		final int paneWidth = getFixedLeftWidth();
+		final int paneHeight = getFixedTopHeight();
+
+		final int bodyLeft = Math.max(left, scrollX + paneWidth);
+		final int bodyTop = Math.max(top, scrollY + paneHeight);
+		if (bodyLeft < right && bodyTop < bottom) {
+			final int restoreCount = canvas.save();
+			canvas.clipRect(bodyLeft, bodyTop, right, bottom);
+			onDraw(canvas, bodyLeft, bodyTop, right, bottom, mScaleFactorX, mScaleFactorY);
+			canvas.restoreToCount(restoreCount);
+		}
+		final boolean cached = isContentCacheEnabled();
+		if (paneHeight > 0) {
+			// top pane follows horizontal scroll only
+			drawPane(canvas, mTopPaneCache, cached, scrollX + paneWidth, 0,
+					scrollX + width, paneHeight, 0, scrollY);
+		}
+		if (paneWidth > 0) {
+			// left pane follows vertical scroll only
+			drawPane(canvas, mLeftPaneCache, cached, 0, scrollY + paneHeight,
+					paneWidth, scrollY + height, scrollX, 0);
+		}
+		if (paneWidth > 0 && paneHeight > 0) {
+			drawPane(canvas, mCornerPaneCache, cached, 0, 0, paneWidth,
+					paneHeight, scrollX, scrollY);
+		}
+	}
+
+	@Override
+	boolean invalidateContentChange(Rect change) {
+		final int paneWidth = getFixedLeftWidth();
+		final int paneHeight = getFixedTopHeight();
+		if (paneWidth == 0 && paneHeight == 0) {
+			return super.invalidateContentChange(change);
+		}
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final int width = getWidth();
+		final int height = getHeight();
+		// panes show parts of worksheet fixed on screen, same as in onDraw
+		boolean visible = invalidatePane(mTopPaneCache, change, scrollX
+				+ paneWidth, 0, scrollX + width, paneHeight, 0, scrollY);
+		visible |= invalidatePane(mLeftPaneCache, change, 0, scrollY
+				+ paneHeight, paneWidth, scrollY + height, scrollX, 0);
+		visible |= invalidatePane(mCornerPaneCache, change, 0, 0, paneWidth,
+				paneHeight, scrollX, scrollY);
+		visible |= super.invalidateContentChange(change);
+		return visible;
+	}
+
+	private boolean invalidatePane(PaneCache cache, Rect change, int left,
+			int top, int right, int bottom, int offsetX, int offsetY) {
+		if (left >= right || top >= bottom) {
+			return false;
+		}
+		final Rect rect = mTmpPaneRect;
+		rect.set(change);
+		if (!rect.intersect(left, top, right, bottom)) {
+			return false;
+		}
+		cache.invalidate(rect);
+		invalidateContentRect(rect.left + offsetX, rect.top + offsetY,
+				rect.right + offsetX, rect.bottom + offsetY);
+		return true;
+	}
+
+	@Override
+	int getFixedLeftWidth() {
+		return Math.min(getWidth(), (int) (mFrozenLeftWidth * mScaleFactorX));
+	}
+
+	@Override
+	int getFixedTopHeight() {
+		return Math.min(getHeight(), (int) (mFrozenTopHeight * mScaleFactorY));
+	}
+
+	@Override
+	void drawScaled(Canvas canvas, int left, int top, int right, int bottom,
+			float scaleFactor) {
+		onDraw(canvas, left, top, right, bottom, scaleFactor, scaleFactor);
+	}
+
+	private void drawPane(Canvas canvas, PaneCache cache, boolean cached,
+			int left, int top, int right, int bottom, int offsetX, int offsetY) {
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		final int restoreCount = canvas.save();
+		canvas.translate(offsetX, offsetY);
+		canvas.clipRect(left, top, right, bottom);
+		if (cached) {
+			final Bitmap bitmap = cache.get(this, left, top, right, bottom);
+			canvas.drawBitmap(bitmap, left, top, null);
+		} else {
+			onDraw(canvas, left, top, right, bottom, mScaleFactorX, mScaleFactorY);
+		}
+		canvas.restoreToCount(restoreCount);
+	}
+
+	/**
+	 * Freezes top rows and left columns of worksheet, so they stay visible
+	 * like spreadsheet headers. Top pane scrolls only horizontally, left pane
+	 * only vertically, both are scaled like the rest of worksheet. When
+	 * content cache is enabled every pane is cached separately, so i.e.
+	 * vertical scroll does not redraw top pane and horizontal scroll redraws
+	 * only its exposed strip.
+	 * 
+	 * @param topHeight
+	 *            height of frozen top pane in worksheet coordinates
+	 * @param leftWidth
+	 *            width of frozen left pane in worksheet coordinates
+	 */
+	public void setFrozenPanes(int topHeight, int leftWidth) {
+		mFrozenTopHeight = topHeight;
+		mFrozenLeftWidth = leftWidth;
+		dropPaneCaches();
+		invalidateContent();
+	}
+
+	public int getFrozenTopHeight() {
+		return mFrozenTopHeight;
+	}
+
+	public int getFrozenLeftWidth() {
+		return mFrozenLeftWidth;
+	}
+
+	private void dropPaneCaches() {
+		mTopPaneCache.drop();
+		mLeftPaneCache.drop();
+		mCornerPaneCache.drop();
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		mTopPaneCache.recycle();
+		mLeftPaneCache.recycle();
+		mCornerPaneCache.recycle();
+		super.onDetachedFromWindow();
+	}
+
+	private static class PaneCache {
+		private Bitmap mBitmap;
+		private Canvas mCanvas;
+		// previous frame is copied from back buffer, bitmap can not draw itself
+		private Bitmap mBack;
+		private Canvas mBackCanvas;
+		private int mLeft;
+		private int mTop;
+		private float mScaleFactorX;
+		private float mScaleFactorY;
+		private int mContentGeneration;
+		private final Rect mDirty = new Rect();
+
+		/**
+		 * @param dirty
+		 *            changed part in the same coordinates as pane bounds
+		 */
+		void invalidate(Rect dirty) {
+			mDirty.union(dirty);
+		}
+
+		Bitmap get(ScrollableScalableView view, int left, int top, int right,
+				int bottom) {
+			final int width = right - left;
+			final int height = bottom - top;
+			boolean valid = mBitmap != null;
+			if (mBitmap == null || mBitmap.getWidth() != width
+					|| mBitmap.getHeight() != height) {
+				drop();
+				mBitmap = Bitmap.createBitmap(width, height,
+						Bitmap.Config.ARGB_8888);
+				mCanvas = new Canvas(mBitmap);
+				valid = false;
+			}
+			final float scaleFactorX = view.mScaleFactorX;
+			final float scaleFactorY = view.mScaleFactorY;
+			final int contentGeneration = view.getContentGeneration();
+			final int dx = left - mLeft;
+			final int dy = top - mTop;
+			if (!valid || mScaleFactorX != scaleFactorX
+					|| mScaleFactorY != scaleFactorY
+					|| mContentGeneration != contentGeneration
+					|| Math.abs(dx) >= width || Math.abs(dy) >= height) {
+				mDirty.setEmpty();
+				mLeft = left;
+				mTop = top;
+				mScaleFactorX = scaleFactorX;
+				mScaleFactorY = scaleFactorY;
+				mContentGeneration = contentGeneration;
+				render(view, left, top, right, bottom);
+				return mBitmap;
+			}
+			if (dx != 0 || dy != 0) {
+				shift(view, left, top, right, bottom, dx, dy);
+			}
+			final Rect dirty = mDirty;
+			if (dirty.intersect(left, top, right, bottom)) {
+				render(view, dirty.left, dirty.top, dirty.right, dirty.bottom);
+			}
+			dirty.setEmpty();
+			return mBitmap;
+		}
+
+		/**
+		 * Moves pane by scroll delta and draws only exposed strips
+		 */
+		private void shift(ScrollableScalableView view, int left, int top,
+				int right, int bottom, int dx, int dy) {
+			if (mBack == null) {
+				mBack = Bitmap.createBitmap(mBitmap.getWidth(),
+						mBitmap.getHeight(), Bitmap.Config.ARGB_8888);
+				mBackCanvas = new Canvas(mBack);
+			}
+			mBack.eraseColor(0);
+			mBackCanvas.drawBitmap(mBitmap, -dx, -dy, null);
+			final Bitmap front = mBack;
+			final Canvas frontCanvas = mBackCanvas;
+			mBack = mBitmap;
+			mBackCanvas = mCanvas;
+			mBitmap = front;
+			mCanvas = frontCanvas;
+			mLeft = left;
+			mTop = top;
+
+			// horizontal strip is drawn in full width, vertical one without it
+			int stripTop = top;
+			int stripBottom = bottom;
+			if (dy > 0) {
+				render(view, left, bottom - dy, right, bottom);
+				stripBottom = bottom - dy;
+			} else if (dy < 0) {
+				render(view, left, top, right, top - dy);
+				stripTop = top - dy;
+			}
+			if (dx > 0) {
+				render(view, right - dx, stripTop, right, stripBottom);
+			} else if (dx < 0) {
+				render(view, left, stripTop, left - dx, stripBottom);
+			}
+		}
+
+		/**
+		 * Clears and draws part of pane given in pane coordinates
+		 */
+		private void render(ScrollableScalableView view, int left, int top,
+				int right, int bottom) {
+			final int restoreCount = mCanvas.save();
+			mCanvas.translate(-mLeft, -mTop);
+			mCanvas.clipRect(left, top, right, bottom);
+			mCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+			view.onDraw(mCanvas, left, top, right, bottom, mScaleFactorX,
+					mScaleFactorY);
+			mCanvas.restoreToCount(restoreCount);
+		}
+
+		/**
+		 * Forgets bitmaps without recycling, last recorded display list may
+		 * still draw them
+		 */
+		void drop() {
+			mBitmap = null;
+			mCanvas = null;
+			mBack = null;
+			mBackCanvas = null;
+		}
+
+		/**
+		 * Recycles bitmaps, only when view is detached
+		 */
+		void recycle() {
+			if (mBitmap != null) {
+				mBitmap.recycle();
+			}
+			if (mBack != null) {
+				mBack.recycle();
+			}
+			drop();
+		}
+	}
+
+	protected void onDrawOverlay(Canvas canvas, int left, int top,
+			int right, int bottom, float scaleFactorX, float scaleFactorY) {
+	}
+
+	@Override
+	protected final void onDrawOverlay(Canvas canvas, int left, int top,
+			int right, int bottom) {
+		onDrawOverlay(canvas, left, top, right, bottom, mScaleFactorX,
+				mScaleFactorY);
+	}
+
+	protected boolean onRefine(int pass, int left, int top, int right,
+			int bottom, float scaleFactorX, float scaleFactorY,
+			long deadlineNanos) {
+		return true;
+	}
+
+	@Override
+	protected final boolean onRefine(int pass, int left, int top, int right,
+			int bottom, long deadlineNanos) {
+		return onRefine(pass, left, top, right, bottom, mScaleFactorX,
+				mScaleFactorY, deadlineNanos);
 	}
 	
 	public void setMinScaleFactor(float minScaleFactor) {
+		final float oldScaleFactorX = mScaleFactorX;
+		final float oldScaleFactorY = mScaleFactorY;
 		mMinScaleFactorX = minScaleFactor;
 		mMinSacleFactorY = minScaleFactor;
 		validateScaleFactors();
+		if (mScaleFactorX == oldScaleFactorX
+				&& mScaleFactorY == oldScaleFactorY) {
+			// bounds alone are not visible
+			return;
+		}
+		publishViewport();
+		restartRefinement();
 		invalidate();
 	}
 	
 	public void setScaleFactor(float scaleFactor) {
+		final float oldScaleFactorX = mScaleFactorX;
+		final float oldScaleFactorY = mScaleFactorY;
 		mScaleFactorX = scaleFactor;
 		mScaleFactorY = scaleFactor;
 		validateScaleFactors();
+		if (mScaleFactorX == oldScaleFactorX
+				&& mScaleFactorY == oldScaleFactorY) {
+			return;
+		}
+		publishViewport();
+		restartRefinement();
 		invalidate();
 	}
 	
@@ -111,11 +450,30 @@ public abstract class ScrollableScalableView extends ScrollableView implements O
 	public float getScaleFactorY() {
 		return mScaleFactorY;
 	}
+
+	@Override
+	protected float getViewportScaleFactorX() {
+		return mScaleFactorX;
+	}
+
+	@Override
+	protected float getViewportScaleFactorY() {
+		return mScaleFactorY;
+	}
 	
 	public void setMaxScaleFactor(float maxScaleFactor) {
+		final float oldScaleFactorX = mScaleFactorX;
+		final float oldScaleFactorY = mScaleFactorY;
 		mMaxScaleFactorX = maxScaleFactor;
 		mMaxScaleFactorY = maxScaleFactor;
 		validateScaleFactors();
+		if (mScaleFactorX == oldScaleFactorX
+				&& mScaleFactorY == oldScaleFactorY) {
+			// bounds alone are not visible
+			return;
+		}
+		publishViewport();
+		restartRefinement();
 		invalidate();
 	}
 	
@@ -143,29 +501,43 @@ public abstract class ScrollableScalableView extends ScrollableView implements O
 		mScaleFactorX *= detector.getScaleFactor();
 		mScaleFactorY *= detector.getScaleFactor();
 		validateScaleFactors();
+		if (mScaleFactorX == oldScaleFactorX
+				&& mScaleFactorY == oldScaleFactorY) {
+			// clamped to scale it already had
+			return true;
+		}
 		float scrollX = (spanX * (mScaleFactorX - oldScaleFactorX));
 		float scrollY = (spanY * (mScaleFactorY - oldScaleFactorY));
 		internalOverscroll((int)scrollX, (int)scrollY);
+		restartRefinement();
 		ViewCompat.postInvalidateOnAnimation(this);
 		return true;
 	}
 
 	@Override
 	public boolean onScaleBegin(ScaleGestureDetector detector) {
+		setInteractionState(INTERACTION_SCALING);
 		return true;
 	}
 
 	@Override
 	public void onScaleEnd(ScaleGestureDetector detector) {
+		setInteractionState(INTERACTION_TOUCHING);
 	}
 
 	@Override
 	protected float computeTouchX(float x) {
+		if (x < mFrozenLeftWidth * mScaleFactorX) {
+			return x / mScaleFactorX;
+		}
 		return super.computeTouchX(x) / mScaleFactorX;
 	}
 	
 	@Override
 	protected float computeTouchY(float y) {
+		if (y < mFrozenTopHeight * mScaleFactorY) {
+			return y / mScaleFactorY;
+		}
 		return super.computeTouchY(y) / mScaleFactorY;
 	}
 }
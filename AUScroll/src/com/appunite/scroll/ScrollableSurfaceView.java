@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.PointF;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Display;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.ScaleGestureDetector.OnScaleGestureListener;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+/**
+ * Alternative to {@link ScrollableScalableView} that draws worksheet on a
+ * dedicated render thread into a {@link SurfaceView}.
+ *
+ * UI thread only collects touch input and velocity and hands it over to the
+ * render thread through atomic fields. Render thread owns scroll position,
+ * scale and {@link OverScrollerCompat} physics, so flings keep running while
+ * UI thread is busy. While animating, render thread advances physics once per
+ * display refresh and sleeps in between.
+ *
+ * {@link #onDraw(Canvas, int, int, int, int, float, float)},
+ * {@link #getWorksheetWidth()} and {@link #getWorksheetHeight()} are called
+ * on the render thread.
+ */
+public abstract class ScrollableSurfaceView extends SurfaceView implements
+		SurfaceHolder.Callback, OnScaleGestureListener {
+
+	private static final int INVALID_POINTER_ID = -1;
+	private static final long NO_FLING = Long.MIN_VALUE;
+	private static final int NO_SCALE = Float.floatToIntBits(1.0f);
+	private static final float DEFAULT_REFRESH_RATE = 60.0f;
+
+	private final AtomicReference<Viewport> mViewport = new AtomicReference<Viewport>(
+			new Viewport(0, 0, 0, 0, 0, 1.0f, 1.0f));
+
+	// UI thread -> render thread handoff
+	private final AtomicInteger mPendingDeltaX = new AtomicInteger();
+	private final AtomicInteger mPendingDeltaY = new AtomicInteger();
+	private final AtomicLong mPendingFling = new AtomicLong(NO_FLING);
+	private final AtomicBoolean mPendingAbort = new AtomicBoolean();
+	private final AtomicInteger mPendingScale = new AtomicInteger(NO_SCALE);
+	private final AtomicBoolean mRenderRequested = new AtomicBoolean(true);
+	private volatile float mScaleFocusX;
+	private volatile float mScaleFocusY;
+	private volatile int mSurfaceWidth;
+	private volatile int mSurfaceHeight;
+	private volatile float mMinScaleFactor = 0.1f;
+	private volatile float mMaxScaleFactor = 5.0f;
+
+	// UI thread only
+	private final ScaleGestureDetector mScaleDetector;
+	private VelocityTracker mVelocityTracker = null;
+	private final int mMinimumVelocity;
+	private int mActivePointerId = INVALID_POINTER_ID;
+	private final PointF mLastMotionPoint = new PointF();
+
+	// render thread only
+	private final OverScrollerCompat mScroller;
+	private final long mFrameIntervalNanos;
+
+	private volatile RenderThread mRenderThread;
+
+	public ScrollableSurfaceView(Context context) {
+		this(context, null, 0);
+	}
+
+	public ScrollableSurfaceView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public ScrollableSurfaceView(Context context, AttributeSet attrs,
+			int defStyle) {
+		super(context, attrs, defStyle);
+
+		mScroller = new OverScrollerCompat(context);
+		mScaleDetector = new ScaleGestureDetector(context, this);
+
+		final ViewConfiguration configuration = ViewConfiguration
+				.get(context);
+		mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
+
+		final Display display = ((WindowManager) context
+				.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+		float refreshRate = display.getRefreshRate();
+		if (refreshRate < 10.0f) {
+			// some devices report bogus refresh rate
+			refreshRate = DEFAULT_REFRESH_RATE;
+		}
+		mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+
+		getHolder().addCallback(this);
+	}
+
+	protected abstract int getWorksheetWidth();
+
+	protected abstract int getWorksheetHeight();
+
+	protected abstract void onDraw(Canvas canvas, int left, int top,
+			int right, int bottom, float scaleFactorX, float scaleFactorY);
+
+	/**
+	 * @return last viewport drawn by render thread, safe to call from any
+	 *         thread
+	 */
+	public Viewport getViewport() {
+		return mViewport.get();
+	}
+
+	/**
+	 * Asks render thread to draw next frame, i.e. after content change. Safe
+	 * to call from any thread.
+	 */
+	public void requestRender() {
+		mRenderRequested.set(true);
+		wakeRenderThread();
+	}
+
+	public void setMinScaleFactor(float minScaleFactor) {
+		mMinScaleFactor = minScaleFactor;
+		requestRender();
+	}
+
+	public void setMaxScaleFactor(float maxScaleFactor) {
+		mMaxScaleFactor = maxScaleFactor;
+		requestRender();
+	}
+
+	private void wakeRenderThread() {
+		final RenderThread renderThread = mRenderThread;
+		if (renderThread != null) {
+			LockSupport.unpark(renderThread);
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		mScaleDetector.onTouchEvent(event);
+		if (mVelocityTracker == null) {
+			mVelocityTracker = VelocityTracker.obtain();
+		}
+		mVelocityTracker.addMovement(event);
+
+		final int action = event.getAction();
+		switch (action & MotionEvent.ACTION_MASK) {
+		case MotionEvent.ACTION_DOWN: {
+			mLastMotionPoint.set(event.getX(), event.getY());
+			mActivePointerId = event.getPointerId(0);
+			mPendingFling.set(NO_FLING);
+			mPendingAbort.set(true);
+			wakeRenderThread();
+			break;
+		}
+		case MotionEvent.ACTION_MOVE: {
+			final int activePointerIndex = event
+					.findPointerIndex(mActivePointerId);
+			if (activePointerIndex < 0) {
+				break;
+			}
+			final float x = event.getX(activePointerIndex);
+			final float y = event.getY(activePointerIndex);
+			if (!mScaleDetector.isInProgress()) {
+				final int deltaX = (int) (mLastMotionPoint.x - x);
+				final int deltaY = (int) (mLastMotionPoint.y - y);
+				mPendingDeltaX.addAndGet(deltaX);
+				mPendingDeltaY.addAndGet(deltaY);
+				wakeRenderThread();
+			}
+			mLastMotionPoint.set(x, y);
+			break;
+		}
+		case MotionEvent.ACTION_UP: {
+			mVelocityTracker.computeCurrentVelocity(1000);
+			final int velocityX = (int) mVelocityTracker.getXVelocity();
+			final int velocityY = (int) mVelocityTracker.getYVelocity();
+			if (Math.abs(velocityX) > mMinimumVelocity
+					|| Math.abs(velocityY) > mMinimumVelocity) {
+				mPendingFling.set(((long) -velocityX << 32)
+						| (-velocityY & 0xffffffffL));
+				wakeRenderThread();
+			}
+			mActivePointerId = INVALID_POINTER_ID;
+			recycleVelocityTracker();
+			break;
+		}
+		case MotionEvent.ACTION_CANCEL: {
+			mActivePointerId = INVALID_POINTER_ID;
+			recycleVelocityTracker();
+			break;
+		}
+		case MotionEvent.ACTION_POINTER_DOWN: {
+			final int index = event.getActionIndex();
+			mLastMotionPoint.set(event.getX(index), event.getY(index));
+			mActivePointerId = event.getPointerId(index);
+			break;
+		}
+		case MotionEvent.ACTION_POINTER_UP: {
+			final int pointerIndex = (action & MotionEvent.ACTION_POINTER_INDEX_MASK) >> MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+			final int pointerId = event.getPointerId(pointerIndex);
+			if (pointerId == mActivePointerId) {
+				final int newPointerIndex = pointerIndex == 0 ? 1 : 0;
+				mLastMotionPoint.set(event.getX(newPointerIndex),
+						event.getY(newPointerIndex));
+				mActivePointerId = event.getPointerId(newPointerIndex);
+				mVelocityTracker.clear();
+			}
+			break;
+		}
+		}
+		return true;
+	}
+
+	private void recycleVelocityTracker() {
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+
+	@Override
+	public boolean onScale(ScaleGestureDetector detector) {
+		mScaleFocusX = detector.getFocusX();
+		mScaleFocusY = detector.getFocusY();
+		final float factor = detector.getScaleFactor();
+		for (;;) {
+			final int current = mPendingScale.get();
+			final int next = Float.floatToIntBits(Float.intBitsToFloat(current)
+					* factor);
+			if (mPendingScale.compareAndSet(current, next)) {
+				break;
+			}
+		}
+		wakeRenderThread();
+		return true;
+	}
+
+	@Override
+	public boolean onScaleBegin(ScaleGestureDetector detector) {
+		return true;
+	}
+
+	@Override
+	public void onScaleEnd(ScaleGestureDetector detector) {
+	}
+
+	@Override
+	public void surfaceCreated(SurfaceHolder holder) {
+		final RenderThread renderThread = new RenderThread(holder);
+		mRenderThread = renderThread;
+		renderThread.start();
+	}
+
+	@Override
+	public void surfaceChanged(SurfaceHolder holder, int format, int width,
+			int height) {
+		mSurfaceWidth = width;
+		mSurfaceHeight = height;
+		requestRender();
+	}
+
+	@Override
+	public void surfaceDestroyed(SurfaceHolder holder) {
+		final RenderThread renderThread = mRenderThread;
+		mRenderThread = null;
+		if (renderThread == null) {
+			return;
+		}
+		renderThread.mRunning = false;
+		LockSupport.unpark(renderThread);
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				renderThread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class RenderThread extends Thread {
+
+		private final SurfaceHolder mHolder;
+		private volatile boolean mRunning = true;
+
+		private int mScrollX;
+		private int mScrollY;
+		private float mScaleFactorX = 1.0f;
+		private float mScaleFactorY = 1.0f;
+		private long mNextFrameTime;
+
+		RenderThread(SurfaceHolder holder) {
+			super("ScrollableSurfaceView render");
+			mHolder = holder;
+		}
+
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+			final Viewport last = mViewport.get();
+			mScrollX = last.getScrollX();
+			mScrollY = last.getScrollY();
+			mScaleFactorX = last.getScaleFactorX();
+			mScaleFactorY = last.getScaleFactorY();
+			mRenderRequested.set(true);
+
+			while (mRunning) {
+				boolean dirty = applyInput();
+				if (!mScroller.isFinished()) {
+					final long now = System.nanoTime();
+					if (now >= mNextFrameTime) {
+						// physics advance once per frame, input may wake
+						// thread in between
+						mNextFrameTime = Math.max(mNextFrameTime
+								+ mFrameIntervalNanos, now);
+						if (mScroller.computeScrollOffset()) {
+							dirty |= scrollTo(mScroller.getCurrX(),
+									mScroller.getCurrY());
+						}
+					}
+				}
+				dirty |= mRenderRequested.getAndSet(false);
+
+				if (dirty) {
+					publishViewport();
+					drawFrame();
+				}
+				if (!mScroller.isFinished()) {
+					final long wait = mNextFrameTime - System.nanoTime();
+					if (wait > 0) {
+						LockSupport.parkNanos(this, wait);
+					}
+				} else if (!dirty) {
+					LockSupport.park(this);
+				}
+			}
+		}
+
+		private boolean applyInput() {
+			boolean changed = false;
+			if (mPendingAbort.getAndSet(false)) {
+				mScroller.abortAnimation();
+			}
+
+			final float scale = Float.intBitsToFloat(mPendingScale
+					.getAndSet(NO_SCALE));
+			if (scale != 1.0f) {
+				final float oldScaleFactorX = mScaleFactorX;
+				final float oldScaleFactorY = mScaleFactorY;
+				mScaleFactorX = clampScale(mScaleFactorX * scale);
+				mScaleFactorY = clampScale(mScaleFactorY * scale);
+				final int scrollX = (int) (mScaleFocusX * (mScaleFactorX - oldScaleFactorX));
+				final int scrollY = (int) (mScaleFocusY * (mScaleFactorY - oldScaleFactorY));
+				scrollTo(mScrollX + scrollX, mScrollY + scrollY);
+				changed = true;
+			}
+
+			final int deltaX = mPendingDeltaX.getAndSet(0);
+			final int deltaY = mPendingDeltaY.getAndSet(0);
+			if (deltaX != 0 || deltaY != 0) {
+				changed |= scrollTo(mScrollX + deltaX, mScrollY + deltaY);
+			}
+
+			final long fling = mPendingFling.getAndSet(NO_FLING);
+			if (fling != NO_FLING) {
+				final int velocityX = (int) (fling >> 32);
+				final int velocityY = (int) fling;
+				mScroller.fling(mScrollX, mScrollY, velocityX, velocityY, 0,
+						getScrollRangeX(), 0, getScrollRangeY());
+				changed = true;
+			}
+			return changed;
+		}
+
+		private float clampScale(float scale) {
+			return Math.max(mMinScaleFactor, Math.min(mMaxScaleFactor, scale));
+		}
+
+		private int getScrollRangeX() {
+			return Math.max(0, (int) (getWorksheetWidth() * mScaleFactorX)
+					- mSurfaceWidth);
+		}
+
+		private int getScrollRangeY() {
+			return Math.max(0, (int) (getWorksheetHeight() * mScaleFactorY)
+					- mSurfaceHeight);
+		}
+
+		private boolean scrollTo(int x, int y) {
+			x = Math.max(0, Math.min(getScrollRangeX(), x));
+			y = Math.max(0, Math.min(getScrollRangeY(), y));
+			if (x == mScrollX && y == mScrollY) {
+				return false;
+			}
+			mScrollX = x;
+			mScrollY = y;
+			return true;
+		}
+
+		private void publishViewport() {
+			final int width = mSurfaceWidth;
+			final int height = mSurfaceHeight;
+			final Viewport last = mViewport.get();
+			if (!last.same(mScrollX, mScrollY, width, height, mScaleFactorX,
+					mScaleFactorY)) {
+				mViewport.set(new Viewport(last.getVersion() + 1, mScrollX,
+						mScrollY, width, height, mScaleFactorX, mScaleFactorY));
+			}
+		}
+
+		private void drawFrame() {
+			final Canvas canvas = mHolder.lockCanvas();
+			if (canvas == null) {
+				return;
+			}
+			try {
+				final int restoreCount = canvas.save();
+				canvas.translate(-mScrollX, -mScrollY);
+				onDraw(canvas, mScrollX, mScrollY, mScrollX + mSurfaceWidth,
+						mScrollY + mSurfaceHeight, mScaleFactorX,
+						mScaleFactorY);
+				canvas.restoreToCount(restoreCount);
+			} finally {
+				mHolder.unlockCanvasAndPost(canvas);
+			}
+		}
+	}
+}
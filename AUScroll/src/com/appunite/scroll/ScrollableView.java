@@ -19,42 +19,185 @@ package com.appunite.scroll;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.PorterDuff;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.v4.view.ViewCompat;
 import android.support.v4.widget.EdgeEffectCompat;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 
+import java.util.ArrayList;
+
 public abstract class ScrollableView extends View {
 
 	protected static final int INVALID_POINTER_ID = -1;
 
-	private static final boolean DEBUG = false;
-	private static final String TAG = ScrollableView.class.getCanonicalName();
+	public static final int INTERACTION_IDLE = 0;
+	public static final int INTERACTION_TOUCHING = 1;
+	public static final int INTERACTION_FLINGING = 2;
+	public static final int INTERACTION_SCALING = 3;
+
+	public interface OnInteractionStateChangeListener {
+		/**
+		 * Called on UI thread when view changes interaction state.
+		 * 
+		 * @param timestamp
+		 *            {@link SystemClock#uptimeMillis()} when oldState stopped
+		 *            and newState started
+		 */
+		void onInteractionStateChanged(ScrollableView view, int oldState,
+				int newState, long timestamp);
+	}
+
+	public interface OnContentChangeListener {
+		/**
+		 * Called on UI thread once per frame with all content changes
+		 * reported since previous frame.
+		 * 
+		 * @param changes
+		 *            changed rectangles in worksheet (unscaled) coordinates,
+		 *            only first count are valid and they are reused after
+		 *            return
+		 */
+		void onContentChanged(ScrollableView view, Rect[] changes, int count,
+				long contentVersion);
+	}
+
+	public interface OnViewportChangeListener {
+		/**
+		 * Called on UI thread when scroll position, size or scale of view
+		 * changed
+		 */
+		void onViewportChanged(ScrollableView view);
+	}
 
-	private OverScrollerCompat mScroller;
+	// scroller, velocity tracker and glows are created on first use, so
+	// screens with many small views that are rarely touched stay light
+	private OverScrollerCompat mScroller = null;
 	private VelocityTracker mVelocityTracker = null;
 	private int mMinimumVelocity;
 
 	private int mActivePointerId = INVALID_POINTER_ID;
 	private PointF mLastMotionPoint = new PointF();
 
+	// Pointer position is extrapolated by this time, 0 disables prediction.
+	// mLastMotionPoint is then the predicted point content was scrolled to,
+	// while velocity tracker still gets real samples.
+	private long mTouchPredictionMillis = 0;
+	private TouchPredictor mTouchPredictor = null;
+	private final PointF mPredictedPoint = new PointF();
+
 	protected boolean mInteracting = false;
 	private int mOverscrollDistance;
 
+	// Glow depth is not exposed by EdgeEffectCompat; platform glows stay
+	// within a fifth of their edge length or a few drawable heights
+	private static final float GLOW_DEPTH_RATIO = 0.4f;
+	private static final float MIN_GLOW_DEPTH_DIP = 128.0f;
+
+	private static final float PREDICTION_MAX_RESIDUAL_DIP = 4.0f;
+	private static final float PREDICTION_MAX_DISTANCE_DIP = 48.0f;
+
 	private EdgeEffectCompat mEdgeGlowTop = null;
 	private EdgeEffectCompat mEdgeGlowBottom = null;
 	private EdgeEffectCompat mEdgeGlowLeft = null;
 	private EdgeEffectCompat mEdgeGlowRight = null;
+	private int mMinGlowDepth;
+	private EdgeGlowView mEdgeGlowView = null;
+	private final Rect mGlowDirty = new Rect();
+	private final Rect mDrawClip = new Rect();
 
 	private boolean mIsClicking = false;
 
+	private int mInteractionState = INTERACTION_IDLE;
+	private long mInteractionStateStartTime = SystemClock.uptimeMillis();
+	private final ArrayList<OnInteractionStateChangeListener> mInteractionStateListeners = new ArrayList<OnInteractionStateChangeListener>();
+
+	private static final int NO_SNAP = Integer.MIN_VALUE;
+
+	private static final int MAX_PENDING_CONTENT_CHANGES = 8;
+
+	private final Rect[] mPendingContentChanges = new Rect[MAX_PENDING_CONTENT_CHANGES];
+	private int mPendingContentChangeCount = 0;
+	private boolean mContentChangeScheduled = false;
+	private long mContentVersion = 0;
+	private final ArrayList<OnContentChangeListener> mContentChangeListeners = new ArrayList<OnContentChangeListener>();
+	private final ArrayList<OnViewportChangeListener> mViewportChangeListeners = new ArrayList<OnViewportChangeListener>();
+	private final Rect mTmpRect = new Rect();
+	private final Runnable mContentChangeRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			dispatchContentChanges();
+		}
+	};
+
+	private boolean mContentCacheEnabled = false;
+	private Bitmap mContentCache = null;
+	private Canvas mContentCacheCanvas = null;
+	// previous frame is copied from back buffer, bitmap can not draw itself
+	private Bitmap mContentCacheBack = null;
+	private Canvas mContentCacheBackCanvas = null;
+	private boolean mContentCacheValid = false;
+	private final Rect mContentCacheDirty = new Rect();
+	private int mContentGeneration = 0;
+	private int mContentCacheLeft;
+	private int mContentCacheTop;
+	private float mContentCacheScaleFactorX;
+	private float mContentCacheScaleFactorY;
+
+	private ScrollGroup mScrollGroup = null;
+	private int mScrollGroupAxes = 0;
+
+	private SnapPoints mSnapPointsX = null;
+	private SnapPoints mSnapPointsY = null;
+
+	private ScrollStats mScrollStats = null;
+
+	// Viewport is published under sequence lock: UI thread only writes
+	// fields, so scrolling never allocates, and readers copy them to Viewport
+	private volatile int mViewportSequence = 0;
+	private volatile long mViewportVersion = 0;
+	private volatile int mViewportScrollX = 0;
+	private volatile int mViewportScrollY = 0;
+	private volatile int mViewportWidth = 0;
+	private volatile int mViewportHeight = 0;
+	private volatile float mViewportScaleFactorX = 1.0f;
+	private volatile float mViewportScaleFactorY = 1.0f;
+
+	private static final long DEFAULT_REFINEMENT_BUDGET_NANOS = 8000000L;
+
+	private long mRefinementBudgetNanos = DEFAULT_REFINEMENT_BUDGET_NANOS;
+	private int mRefinementPass = 0;
+	private boolean mRefinementScheduled = false;
+	private int mRefinementScrollX;
+	private int mRefinementScrollY;
+	private boolean mScrollStepScheduled = false;
+	private final Runnable mScrollStepRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			mScrollStepScheduled = false;
+			computeScroll();
+		}
+	};
+
+	private final Runnable mRefinementRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			runRefinementSlice();
+		}
+	};
+
 	public ScrollableView(Context context) {
 		this(context, null, 0);
 	}
@@ -66,27 +209,19 @@ public abstract class ScrollableView extends View {
 	public ScrollableView(Context context, AttributeSet attrs, int defStyle) {
 		super(context, attrs, defStyle);
 
-		mScroller = new OverScrollerCompat(this.getContext());
-
 		this.setOverScrollMode(View.OVER_SCROLL_ALWAYS);
 
 		final ViewConfiguration configuration = ViewConfiguration
 				.get(getContext());
 		mMinimumVelocity = configuration.getScaledMinimumFlingVelocity();
 		mOverscrollDistance = configuration.getScaledOverscrollDistance();
+		mMinGlowDepth = (int) (MIN_GLOW_DEPTH_DIP
+				* getResources().getDisplayMetrics().density + 0.5f);
 	}
 
 	@Override
 	public void setOverScrollMode(int mode) {
-		if (mode != OVER_SCROLL_NEVER) {
-			if (mEdgeGlowTop == null) {
-				Context context = getContext();
-				mEdgeGlowTop = new EdgeEffectCompat(context);
-				mEdgeGlowBottom = new EdgeEffectCompat(context);
-				mEdgeGlowLeft = new EdgeEffectCompat(context);
-				mEdgeGlowRight = new EdgeEffectCompat(context);
-			}
-		} else {
+		if (mode == OVER_SCROLL_NEVER) {
 			mEdgeGlowTop = null;
 			mEdgeGlowBottom = null;
 			mEdgeGlowLeft = null;
@@ -95,6 +230,27 @@ public abstract class ScrollableView extends View {
 		super.setOverScrollMode(mode);
 	}
 
+	private void ensureEdgeGlows() {
+		if (mEdgeGlowTop == null) {
+			Context context = getContext();
+			mEdgeGlowTop = new EdgeEffectCompat(context);
+			mEdgeGlowBottom = new EdgeEffectCompat(context);
+			mEdgeGlowLeft = new EdgeEffectCompat(context);
+			mEdgeGlowRight = new EdgeEffectCompat(context);
+		}
+	}
+
+	private OverScrollerCompat getScroller() {
+		if (mScroller == null) {
+			mScroller = new OverScrollerCompat(getContext());
+		}
+		return mScroller;
+	}
+
+	private boolean isScrollerFinished() {
+		return mScroller == null || mScroller.isFinished();
+	}
+
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
 		initVelocityTrackerIfNotExists();
@@ -103,15 +259,24 @@ public abstract class ScrollableView extends View {
 		final int action = event.getAction();
 		switch (action & MotionEvent.ACTION_MASK) {
 		case MotionEvent.ACTION_DOWN: {
-			if (!mScroller.isFinished())
+			if (!isScrollerFinished())
 				mScroller.abortAnimation();
+			abortRefinement();
 
 			final float x = event.getX();
 			final float y = event.getY();
 
 			mLastMotionPoint.set(x, y);
 			mActivePointerId = event.getPointerId(0);
+			if (mTouchPredictor != null) {
+				mTouchPredictor.reset();
+				mTouchPredictor.addSample(event.getEventTime(), x, y);
+			}
+			if (mScrollGroup != null) {
+				mScrollGroup.onMemberTouchDown(this);
+			}
 			startInteracting();
+			setInteractionState(INTERACTION_TOUCHING);
 			
 			mIsClicking  = touchDown(x, y);
 			break;
@@ -123,6 +288,9 @@ public abstract class ScrollableView extends View {
 			if (activePointerIndex >= 0) {
 				float x = event.getX(activePointerIndex);
 				float y = event.getY(activePointerIndex);
+				if (mTouchPredictor != null) {
+					addPredictorSamples(event, activePointerIndex);
+				}
 				if (mIsClicking) {
 					mIsClicking = touchMove(x, y);
 					if (!mIsClicking) {
@@ -132,6 +300,12 @@ public abstract class ScrollableView extends View {
 				if (mIsClicking) {
 					mLastMotionPoint.set(x, y);
 				} else {
+					if (mTouchPredictor != null
+							&& mTouchPredictor.predict(event.getEventTime()
+									+ mTouchPredictionMillis, mPredictedPoint)) {
+						x = mPredictedPoint.x;
+						y = mPredictedPoint.y;
+					}
 					int deltaX = (int) (mLastMotionPoint.x - x);
 					int deltaY = (int) (mLastMotionPoint.y - y);
 					mLastMotionPoint.set(x, y);
@@ -159,28 +333,30 @@ public abstract class ScrollableView extends View {
 						|| Math.abs(initialYVelocity) > mMinimumVelocity) {
 					this.fling(-initialXVelocity, -initialYVelocity);
 				} else {
-					if (mScroller.springBack(getScrollX(), getScrollY(), 0,
-							getScrollRangeX(), 0, getScrollRangeY())) {
-						oldPostInvalidateOnAnimation();
+					if (springBack(getScrollX(), getScrollY())) {
+						requestScrollStep();
 					}
 	
 					this.stopInteracting();
 				}
 			}
 			mActivePointerId = INVALID_POINTER_ID;
+			recycleVelocityTracker();
 			break;
 		}
 		case MotionEvent.ACTION_CANCEL: {
 			if (mIsClicking) {
 				touchCanceled(mLastMotionPoint.x, mLastMotionPoint.y);
 			} else {
-				if (mScroller.springBack(getScrollX(), getScrollY(), 0,
-						getScrollRangeX(), 0, getScrollRangeY())) {
-					oldPostInvalidateOnAnimation();
+				if (springBack(getScrollX(), getScrollY())) {
+					requestScrollStep();
 				}
 			}
+			mIsClicking = false;
+			this.stopInteracting();
 
 			mActivePointerId = INVALID_POINTER_ID;
+			recycleVelocityTracker();
 			break;
 		}
 
@@ -188,6 +364,9 @@ public abstract class ScrollableView extends View {
 			final int index = event.getActionIndex();
 			mLastMotionPoint.set(event.getX(), event.getY());
 			mActivePointerId = event.getPointerId(index);
+			if (mTouchPredictor != null) {
+				mTouchPredictor.reset();
+			}
 			break;
 		}
 
@@ -204,6 +383,9 @@ public abstract class ScrollableView extends View {
 				if (mVelocityTracker != null) {
 					mVelocityTracker.clear();
 				}
+				if (mTouchPredictor != null) {
+					mTouchPredictor.reset();
+				}
 			}
 
 			break;
@@ -220,15 +402,10 @@ public abstract class ScrollableView extends View {
 		final int overscrollMode = getOverScrollMode();
 		final boolean canOverscroll = overscrollMode == OVER_SCROLL_ALWAYS
 				|| (overscrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS);
-		if (DEBUG) {
-			Log.v(TAG, String.format(
-					"onverScrollBy: %d, %d, %d, %d, %d, %d",
-					deltaX, deltaY, oldX, oldY, getScrollRangeX(),
-					getScrollRangeY()));
-		}
 		if (overScrollBy(deltaX, deltaY, oldX, oldY,
 				getScrollRangeX(), getScrollRangeY(),
-				mOverscrollDistance, mOverscrollDistance, true)) {
+				mOverscrollDistance, mOverscrollDistance, true)
+				&& mVelocityTracker != null) {
 			// Break our velocity if we hit a scroll barrier.
 			mVelocityTracker.clear();
 		}
@@ -237,34 +414,48 @@ public abstract class ScrollableView extends View {
 		if (canOverscroll) {
 			final int pulledToY = oldY + deltaY;
 			final int pulledToX = oldX + deltaX;
-			if (pulledToY < 0) {
-				mEdgeGlowTop.onPull((float) deltaY / getHeight());
-				if (!mEdgeGlowBottom.isFinished()) {
-					mEdgeGlowBottom.onRelease();
-				}
-			} else if (pulledToY > getScrollRangeY()) {
-				mEdgeGlowBottom
-						.onPull((float) deltaY / getHeight());
-				if (!mEdgeGlowTop.isFinished()) {
-					mEdgeGlowTop.onRelease();
-				}
+			if (pulledToY < 0 || pulledToY > getScrollRangeY()
+					|| pulledToX < 0 || pulledToX > getScrollRangeX()) {
+				ensureEdgeGlows();
 			}
-			if (pulledToX < 0) {
-				mEdgeGlowLeft.onPull((float) deltaX / getWidth());
-				if (!mEdgeGlowRight.isFinished()) {
-					mEdgeGlowRight.onRelease();
+			boolean glowChanged = false;
+			if (deltaY != 0) {
+				if (pulledToY < 0) {
+					mEdgeGlowTop.onPull((float) deltaY / getHeight());
+					if (!mEdgeGlowBottom.isFinished()) {
+						mEdgeGlowBottom.onRelease();
+					}
+					glowChanged = true;
+				} else if (pulledToY > getScrollRangeY()) {
+					mEdgeGlowBottom
+							.onPull((float) deltaY / getHeight());
+					if (!mEdgeGlowTop.isFinished()) {
+						mEdgeGlowTop.onRelease();
+					}
+					glowChanged = true;
 				}
-			} else if (pulledToX > getScrollRangeX()) {
-				mEdgeGlowRight.onPull((float) deltaX / getWidth());
-				if (!mEdgeGlowLeft.isFinished()) {
-					mEdgeGlowLeft.onRelease();
+			}
+			if (deltaX != 0) {
+				if (pulledToX < 0) {
+					mEdgeGlowLeft.onPull((float) deltaX / getWidth());
+					if (!mEdgeGlowRight.isFinished()) {
+						mEdgeGlowRight.onRelease();
+					}
+					glowChanged = true;
+				} else if (pulledToX > getScrollRangeX()) {
+					mEdgeGlowRight.onPull((float) deltaX / getWidth());
+					if (!mEdgeGlowLeft.isFinished()) {
+						mEdgeGlowLeft.onRelease();
+					}
+					glowChanged = true;
 				}
 			}
-			if (!mEdgeGlowTop.isFinished()
-					|| !mEdgeGlowBottom.isFinished()
-					|| !mEdgeGlowLeft.isFinished()
-					|| !mEdgeGlowRight.isFinished()) {
-				oldPostInvalidateOnAnimation();
+			// scrolled view is already redrawn, unfinished glows keep
+			// animating from onDrawEdges()
+			if (glowChanged
+					&& (mEdgeGlowView != null || getScrollX() == oldX
+							&& getScrollY() == oldY)) {
+				postInvalidateEdges();
 			}
 		}
 	}
@@ -314,12 +505,54 @@ public abstract class ScrollableView extends View {
 		return false;
 	}
 
+	private void addPredictorSamples(MotionEvent event, int pointerIndex) {
+		final int historySize = event.getHistorySize();
+		for (int h = 0; h < historySize; h++) {
+			mTouchPredictor.addSample(event.getHistoricalEventTime(h),
+					event.getHistoricalX(pointerIndex, h),
+					event.getHistoricalY(pointerIndex, h));
+		}
+		mTouchPredictor.addSample(event.getEventTime(),
+				event.getX(pointerIndex), event.getY(pointerIndex));
+	}
+
+	/**
+	 * Drags content to pointer position extrapolated by given time from
+	 * recent touch samples, so content trails finger less. Prediction is
+	 * skipped when samples are noisy or pointer turns back. Usually one or
+	 * two frame intervals, 0 disables prediction (default).
+	 */
+	public void setTouchPredictionMillis(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("millis < 0");
+		}
+		mTouchPredictionMillis = millis;
+		if (millis == 0) {
+			mTouchPredictor = null;
+		} else if (mTouchPredictor == null) {
+			final float density = getResources().getDisplayMetrics().density;
+			mTouchPredictor = new TouchPredictor(PREDICTION_MAX_RESIDUAL_DIP
+					* density, PREDICTION_MAX_DISTANCE_DIP * density);
+		}
+	}
+
+	public long getTouchPredictionMillis() {
+		return mTouchPredictionMillis;
+	}
+
 	private void initVelocityTrackerIfNotExists() {
 		if (mVelocityTracker == null) {
 			mVelocityTracker = VelocityTracker.obtain();
 		}
 	}
 
+	private void recycleVelocityTracker() {
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+
 	private int getScrollRangeY() {
 		int range = computeVerticalScrollRange() - this.getHeight();
 		if (range < 0) {
@@ -336,19 +569,309 @@ public abstract class ScrollableView extends View {
 		return range;
 	}
 
-	private void oldPostInvalidateOnAnimation() {
-		ViewCompat.postInvalidateOnAnimation(this);
+	/**
+	 * Redraws only strips along edges where glow is animating, so content is
+	 * not repainted while glow alone is moving
+	 */
+	private void postInvalidateEdges() {
+		final Rect dirty = mGlowDirty;
+		dirty.setEmpty();
+		if (mEdgeGlowTop == null) {
+			return;
+		}
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final int width = getWidth();
+		final int height = getHeight();
+		final int relativeLeft = getPaddingLeft() + scrollX;
+		final int relativeTop = getPaddingTop() + scrollY;
+		final int glowWidth = width - getPaddingLeft() - getPaddingRight();
+		final int glowHeight = height - getPaddingTop() - getPaddingBottom();
+		final int depthY = getGlowDepth(glowWidth, height);
+		final int depthX = getGlowDepth(glowHeight, width);
+
+		if (!mEdgeGlowTop.isFinished()) {
+			final int glowTop = Math.min(0, scrollY);
+			dirty.union(relativeLeft, glowTop, relativeLeft + glowWidth,
+					glowTop + depthY);
+		}
+		if (!mEdgeGlowBottom.isFinished()) {
+			final int glowBottom = Math.max(getScrollRangeY(), scrollY)
+					+ height;
+			dirty.union(relativeLeft, glowBottom - depthY, relativeLeft
+					+ glowWidth, glowBottom);
+		}
+		if (!mEdgeGlowLeft.isFinished()) {
+			final int glowLeft = Math.min(0, scrollX);
+			dirty.union(glowLeft, relativeTop, glowLeft + depthX, relativeTop
+					+ glowHeight);
+		}
+		if (!mEdgeGlowRight.isFinished()) {
+			final int glowRight = Math.max(getScrollRangeX(), scrollX) + width;
+			dirty.union(glowRight - depthX, relativeTop, glowRight, relativeTop
+					+ glowHeight);
+		}
+		if (dirty.isEmpty()) {
+			return;
+		}
+		if (mScrollStats != null) {
+			mScrollStats.mFrameRequestCount += 1;
+		}
+		if (mEdgeGlowView != null) {
+			// glow view is not scrolled
+			ViewCompat.postInvalidateOnAnimation(mEdgeGlowView, dirty.left
+					- scrollX, dirty.top - scrollY, dirty.right - scrollX,
+					dirty.bottom - scrollY);
+			return;
+		}
+		ViewCompat.postInvalidateOnAnimation(this, dirty.left, dirty.top,
+				dirty.right, dirty.bottom);
+	}
+
+	/**
+	 * Moves drawing of edge glows to glow view, null draws them here again
+	 */
+	void setEdgeGlowView(EdgeGlowView edgeGlowView) {
+		if (mEdgeGlowView != null && mEdgeGlowView != edgeGlowView) {
+			mEdgeGlowView.onUnbound();
+		}
+		mEdgeGlowView = edgeGlowView;
+		invalidate();
 	}
 
+	/**
+	 * Draws edge glows for {@link EdgeGlowView}, canvas has to be translated
+	 * like content of this view
+	 */
+	void drawEdgeGlows(Canvas canvas) {
+		onDrawEdges(canvas);
+	}
+
+	/**
+	 * @return conservative depth of glow drawn along edge of given length,
+	 *         glow never reaches further than the view extent
+	 */
+	private int getGlowDepth(int edgeLength, int extent) {
+		return Math.min(extent,
+				Math.max(mMinGlowDepth, (int) (edgeLength * GLOW_DEPTH_RATIO)));
+	}
+
+	void setScrollGroup(ScrollGroup scrollGroup, int axes) {
+		mScrollGroup = scrollGroup;
+		mScrollGroupAxes = axes;
+	}
+
+	public ScrollGroup getScrollGroup() {
+		return mScrollGroup;
+	}
+
+	/**
+	 * Attaches counters of touch, scroller and draw work, null detaches them
+	 */
+	public void setScrollStats(ScrollStats scrollStats) {
+		mScrollStats = scrollStats;
+	}
+
+	public ScrollStats getScrollStats() {
+		return mScrollStats;
+	}
+
+	@Override
+	protected boolean overScrollBy(int deltaX, int deltaY, int scrollX,
+			int scrollY, int scrollRangeX, int scrollRangeY,
+			int maxOverScrollX, int maxOverScrollY, boolean isTouchEvent) {
+		if (mScrollStats != null) {
+			mScrollStats.mOverScrollCount += 1;
+		}
+		return super.overScrollBy(deltaX, deltaY, scrollX, scrollY,
+				scrollRangeX, scrollRangeY, maxOverScrollX, maxOverScrollY,
+				isTouchEvent);
+	}
+
+	@Override
+	public void invalidate() {
+		if (mScrollStats != null) {
+			mScrollStats.mInvalidateCount += 1;
+		}
+		super.invalidate();
+	}
+
+	@Override
+	public void invalidate(int l, int t, int r, int b) {
+		if (mScrollStats != null) {
+			mScrollStats.mInvalidateCount += 1;
+		}
+		super.invalidate(l, t, r, b);
+	}
+
+	boolean isScrollFinished() {
+		return isScrollerFinished();
+	}
+
+	void abortScrollAnimation() {
+		if (!isScrollerFinished()) {
+			mScroller.abortAnimation();
+			stopInteracting();
+		}
+	}
+
+	int getScrollGroupAxes() {
+		return mScrollGroupAxes;
+	}
+
+	void syncScroll(int scrollX, int scrollY, int sourceAxes) {
+		final int axes = mScrollGroupAxes & sourceAxes;
+		final int x = (axes & ScrollGroup.AXIS_X) != 0 ? scrollX : getScrollX();
+		final int y = (axes & ScrollGroup.AXIS_Y) != 0 ? scrollY : getScrollY();
+		if (x != getScrollX() || y != getScrollY()) {
+			super.scrollTo(x, y);
+			awakenScrollBars();
+		}
+	}
+
+	@SuppressWarnings("deprecation")
 	private void fling(int velocityX, int velocityY) {
 		int x = this.getScrollX();
 		int y = this.getScrollY();
+		final OverScrollerCompat scroller = getScroller();
 
 		this.startInteracting();
+		setInteractionState(INTERACTION_FLINGING);
 		// fScroller.setFriction( ViewConfiguration.getScrollFriction( ) );
-		mScroller.fling(x, y, velocityX, velocityY, 0, getScrollRangeX(), 0,
-				getScrollRangeY());
-		oldPostInvalidateOnAnimation();
+		final int rangeX = getScrollRangeX();
+		final int rangeY = getScrollRangeY();
+		final int snapX = getFlingSnapTarget(mSnapPointsX,
+				getViewportScaleFactorX(), x, velocityX, rangeX);
+		final int snapY = getFlingSnapTarget(mSnapPointsY,
+				getViewportScaleFactorY(), y, velocityY, rangeY);
+		if (snapX != NO_SNAP || snapY != NO_SNAP) {
+			// flywheel would add velocity of running fling to adjusted one
+			scroller.forceFinished(true);
+			if (snapX != NO_SNAP) {
+				velocityX = scroller.getFlingVelocity(snapX - x);
+			}
+			if (snapY != NO_SNAP) {
+				velocityY = scroller.getFlingVelocity(snapY - y);
+			}
+		}
+		// snap targets are within range already, so clamping can only turn
+		// rounding error into bounce
+		scroller.fling(x, y, velocityX, velocityY,
+				snapX == NO_SNAP ? 0 : Integer.MIN_VALUE,
+				snapX == NO_SNAP ? rangeX : Integer.MAX_VALUE,
+				snapY == NO_SNAP ? 0 : Integer.MIN_VALUE,
+				snapY == NO_SNAP ? rangeY : Integer.MAX_VALUE);
+		// velocity is rounded, so land exactly on snap point on the same
+		// deceleration curve
+		if (snapX != NO_SNAP) {
+			scroller.setFinalX(snapX);
+		}
+		if (snapY != NO_SNAP) {
+			scroller.setFinalY(snapY);
+		}
+		requestScrollStep();
+	}
+
+	/**
+	 * @return scroll position nearest to natural end of fling on which fling
+	 *         should stop or {@link #NO_SNAP}
+	 */
+	private int getFlingSnapTarget(SnapPoints snapPoints, float scaleFactor,
+			int scroll, int velocity, int range) {
+		if (snapPoints == null || snapPoints.getCount() == 0 || scroll < 0
+				|| scroll > range) {
+			return NO_SNAP;
+		}
+		final int projected = scroll + mScroller.getFlingDistance(velocity);
+		if (projected < 0 || projected > range) {
+			// leave flings into edges bouncing as usual
+			return NO_SNAP;
+		}
+		int index = snapPoints.getNearestIndex(projected / scaleFactor);
+		int target = Math.round(snapPoints.getPosition(index) * scaleFactor);
+		// fling moves at least to next snap point in its direction
+		if (velocity > 0 && target <= scroll) {
+			index = snapPoints.getHigherIndex(scroll / scaleFactor);
+		} else if (velocity < 0 && target >= scroll) {
+			index = snapPoints.getLowerIndex(scroll / scaleFactor);
+		}
+		if (index < 0) {
+			return NO_SNAP;
+		}
+		target = Math.round(snapPoints.getPosition(index) * scaleFactor);
+		return Math.max(0, Math.min(range, target));
+	}
+
+	/**
+	 * Springs back into scroll range and onto nearest snap points
+	 * 
+	 * @return true if animation was started
+	 */
+	private boolean springBack(int scrollX, int scrollY) {
+		final int rangeX = getScrollRangeX();
+		final int rangeY = getScrollRangeY();
+		final int snapX = getSnapTarget(mSnapPointsX,
+				getViewportScaleFactorX(), scrollX, rangeX);
+		final int snapY = getSnapTarget(mSnapPointsY,
+				getViewportScaleFactorY(), scrollY, rangeY);
+		final int minX = snapX == NO_SNAP ? 0 : snapX;
+		final int maxX = snapX == NO_SNAP ? rangeX : snapX;
+		final int minY = snapY == NO_SNAP ? 0 : snapY;
+		final int maxY = snapY == NO_SNAP ? rangeY : snapY;
+		if (scrollX >= minX && scrollX <= maxX && scrollY >= minY
+				&& scrollY <= maxY) {
+			return false;
+		}
+		// single allowed position makes spring back settle on it
+		return getScroller().springBack(scrollX, scrollY, minX, maxX, minY,
+				maxY);
+	}
+
+	private static int getSnapTarget(SnapPoints snapPoints,
+			float scaleFactor, int scroll, int range) {
+		if (snapPoints == null || snapPoints.getCount() == 0) {
+			return NO_SNAP;
+		}
+		final int clamped = Math.max(0, Math.min(range, scroll));
+		final int index = snapPoints.getNearestIndex(clamped / scaleFactor);
+		final int target = Math.round(snapPoints.getPosition(index)
+				* scaleFactor);
+		return Math.max(0, Math.min(range, target));
+	}
+
+	/**
+	 * Animates scroll to given position clamped to scroll range
+	 */
+	public void smoothScrollTo(int x, int y) {
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final int dx = Math.max(0, Math.min(getScrollRangeX(), x)) - scrollX;
+		final int dy = Math.max(0, Math.min(getScrollRangeY(), y)) - scrollY;
+		if (dx == 0 && dy == 0) {
+			return;
+		}
+		abortRefinement();
+		startInteracting();
+		setInteractionState(INTERACTION_FLINGING);
+		getScroller().startScroll(scrollX, scrollY, dx, dy);
+		requestScrollStep();
+	}
+
+	/**
+	 * Makes flings and spring backs settle on snap points, null disables
+	 * snapping on axis. Positions are in worksheet (unscaled) coordinates.
+	 */
+	public void setSnapPoints(SnapPoints snapPointsX, SnapPoints snapPointsY) {
+		mSnapPointsX = snapPointsX;
+		mSnapPointsY = snapPointsY;
+	}
+
+	public SnapPoints getSnapPointsX() {
+		return mSnapPointsX;
+	}
+
+	public SnapPoints getSnapPointsY() {
+		return mSnapPointsY;
 	}
 
 	private void startInteracting() {
@@ -357,56 +880,474 @@ public abstract class ScrollableView extends View {
 
 	private void stopInteracting() {
 		mInteracting = false;
+		setInteractionState(isScrollerFinished() ? INTERACTION_IDLE
+				: INTERACTION_FLINGING);
+		scheduleRefinement();
 	}
 
-	@Override
-	public void computeScroll() {
-		if (DEBUG) {
-			Log.v(TAG, String.format("computeScroll: %d %d", getScrollX(),
-					getScrollY()));
+	public void addOnInteractionStateChangeListener(
+			OnInteractionStateChangeListener listener) {
+		mInteractionStateListeners.add(listener);
+	}
+
+	public void removeOnInteractionStateChangeListener(
+			OnInteractionStateChangeListener listener) {
+		mInteractionStateListeners.remove(listener);
+	}
+
+	/**
+	 * @return one of {@link #INTERACTION_IDLE},
+	 *         {@link #INTERACTION_TOUCHING}, {@link #INTERACTION_FLINGING},
+	 *         {@link #INTERACTION_SCALING}
+	 */
+	public int getInteractionState() {
+		return mInteractionState;
+	}
+
+	/**
+	 * @return {@link SystemClock#uptimeMillis()} when current interaction
+	 *         state started
+	 */
+	public long getInteractionStateStartTime() {
+		return mInteractionStateStartTime;
+	}
+
+	protected void setInteractionState(int state) {
+		final int oldState = mInteractionState;
+		if (oldState == state) {
+			return;
 		}
-		if (mScroller.computeScrollOffset()) {
-			int oldX = getScrollX();
-			int oldY = getScrollY();
-			int x = mScroller.getCurrX();
-			int y = mScroller.getCurrY();
-			if (oldX == x && oldY == y) {
+		final long now = SystemClock.uptimeMillis();
+		mInteractionState = state;
+		mInteractionStateStartTime = now;
+		for (int i = 0; i < mInteractionStateListeners.size(); i++) {
+			mInteractionStateListeners.get(i).onInteractionStateChanged(this,
+					oldState, state, now);
+		}
+	}
+
+	/**
+	 * Number of refinement passes run for the visible region once the view
+	 * becomes idle. Zero (default) disables refinement.
+	 */
+	protected int getRefinementPassCount() {
+		return 0;
+	}
+
+	/**
+	 * Runs a part of refinement pass for the visible region. Implementation
+	 * should stop working when {@link System#nanoTime()} reaches deadline.
+	 * 
+	 * @return true if pass is complete, false if it should be resumed in the
+	 *         next frame
+	 */
+	protected boolean onRefine(int pass, int left, int top, int right,
+			int bottom, long deadlineNanos) {
+		return true;
+	}
+
+	/**
+	 * @return number of refinement passes already completed for the visible
+	 *         region
+	 */
+	public int getRefinementPass() {
+		return mRefinementPass;
+	}
+
+	public void setRefinementBudgetNanos(long budgetNanos) {
+		mRefinementBudgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Drops all completed refinement passes, i.e. after content change, and
+	 * starts refinement again when view is idle.
+	 */
+	public void restartRefinement() {
+		mRefinementPass = 0;
+		scheduleRefinement();
+	}
+
+	protected boolean isIdle() {
+		return !mInteracting && isScrollerFinished();
+	}
+
+	private void scheduleRefinement() {
+		if (mRefinementScheduled || !isIdle()
+				|| mRefinementPass >= getRefinementPassCount()) {
+			return;
+		}
+		mRefinementScheduled = true;
+		ViewCompat.postOnAnimation(this, mRefinementRunnable);
+	}
+
+	private void abortRefinement() {
+		if (mRefinementScheduled) {
+			removeCallbacks(mRefinementRunnable);
+			mRefinementScheduled = false;
+		}
+	}
+
+	private void runRefinementSlice() {
+		mRefinementScheduled = false;
+		if (!isIdle()) {
+			return;
+		}
+		final int left = getScrollX();
+		final int top = getScrollY();
+		if (left != mRefinementScrollX || top != mRefinementScrollY) {
+			mRefinementScrollX = left;
+			mRefinementScrollY = top;
+			mRefinementPass = 0;
+		}
+		final int right = getWidth() + left;
+		final int bottom = getHeight() + top;
+		final int passCount = getRefinementPassCount();
+		final long deadline = System.nanoTime() + mRefinementBudgetNanos;
+
+		boolean refined = false;
+		while (mRefinementPass < passCount) {
+			if (!onRefine(mRefinementPass, left, top, right, bottom, deadline)) {
+				break;
+			}
+			mRefinementPass += 1;
+			refined = true;
+			if (System.nanoTime() >= deadline) {
+				break;
+			}
+		}
+		if (refined) {
+			invalidateContent();
+		}
+		scheduleRefinement();
+	}
+
+	public void addOnContentChangeListener(OnContentChangeListener listener) {
+		mContentChangeListeners.add(listener);
+	}
+
+	public void removeOnContentChangeListener(OnContentChangeListener listener) {
+		mContentChangeListeners.remove(listener);
+	}
+
+	public long getContentVersion() {
+		return mContentVersion;
+	}
+
+	/**
+	 * Reports that whole worksheet content changed
+	 */
+	public void notifyContentChanged(long contentVersion) {
+		notifyContentChanged(0, 0, getWorksheetWidth(), getWorksheetHeight(),
+				contentVersion);
+	}
+
+	/**
+	 * Reports that part of worksheet content changed. Rectangle is in worksheet
+	 * (unscaled) coordinates. Changes reported during one frame are batched
+	 * and only visible part of them is redrawn. Has to be called on UI thread.
+	 */
+	public void notifyContentChanged(int left, int top, int right,
+			int bottom, long contentVersion) {
+		if (contentVersion > mContentVersion) {
+			mContentVersion = contentVersion;
+		}
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		addPendingContentChange(left, top, right, bottom);
+		if (!mContentChangeScheduled) {
+			mContentChangeScheduled = true;
+			ViewCompat.postOnAnimation(this, mContentChangeRunnable);
+		}
+	}
+
+	private void addPendingContentChange(int left, int top, int right,
+			int bottom) {
+		final Rect[] changes = mPendingContentChanges;
+		final int count = mPendingContentChangeCount;
+		for (int i = 0; i < count; i++) {
+			if (changes[i].intersects(left, top, right, bottom)) {
+				changes[i].union(left, top, right, bottom);
 				return;
 			}
+		}
+		if (count < MAX_PENDING_CONTENT_CHANGES) {
+			if (changes[count] == null) {
+				changes[count] = new Rect();
+			}
+			changes[count].set(left, top, right, bottom);
+			mPendingContentChangeCount = count + 1;
+			return;
+		}
+		// Too many separate changes - merge into one that grows least
+		int best = 0;
+		long bestGrowth = Long.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			final Rect change = changes[i];
+			final long area = (long) change.width() * change.height();
+			final long unionArea = (long) (Math.max(change.right, right) - Math
+					.min(change.left, left))
+					* (Math.max(change.bottom, bottom) - Math.min(change.top,
+							top));
+			if (unionArea - area < bestGrowth) {
+				bestGrowth = unionArea - area;
+				best = i;
+			}
+		}
+		changes[best].union(left, top, right, bottom);
+	}
 
-			if (DEBUG) {
-				Log.v(TAG, String.format(
-						"computeScrollOffset: %d, %d -> %d, %d", oldX, oldY, x,
-						y));
+	private void dispatchContentChanges() {
+		mContentChangeScheduled = false;
+		final int count = mPendingContentChangeCount;
+		mPendingContentChangeCount = 0;
+		if (count == 0) {
+			return;
+		}
+		final Rect[] changes = mPendingContentChanges;
+		for (int i = 0; i < mContentChangeListeners.size(); i++) {
+			mContentChangeListeners.get(i).onContentChanged(this, changes,
+					count, mContentVersion);
+		}
+
+		final float scaleFactorX = getViewportScaleFactorX();
+		final float scaleFactorY = getViewportScaleFactorY();
+		final Rect scaled = mTmpRect;
+		boolean visibleChanged = false;
+		for (int i = 0; i < count; i++) {
+			final Rect change = changes[i];
+			scaled.set((int) Math.floor(change.left * scaleFactorX),
+					(int) Math.floor(change.top * scaleFactorY),
+					(int) Math.ceil(change.right * scaleFactorX),
+					(int) Math.ceil(change.bottom * scaleFactorY));
+			visibleChanged |= invalidateContentChange(scaled);
+		}
+		if (visibleChanged) {
+			restartRefinement();
+		}
+	}
+
+	/**
+	 * Invalidates changed part of content, may modify change
+	 * 
+	 * @param change
+	 *            changed rectangle in scaled worksheet coordinates
+	 * @return true if change is visible
+	 */
+	boolean invalidateContentChange(Rect change) {
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		if (!change.intersect(scrollX, scrollY, scrollX + getWidth(), scrollY
+				+ getHeight())) {
+			return false;
+		}
+		invalidateContentRect(change.left, change.top, change.right,
+				change.bottom);
+		return true;
+	}
+
+	/**
+	 * Redraws rectangle of view given in scrolled view coordinates, also in
+	 * content cache
+	 */
+	void invalidateContentRect(int left, int top, int right, int bottom) {
+		mContentCacheDirty.union(left, top, right, bottom);
+		invalidate(left, top, right, bottom);
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		publishViewport();
+		restartRefinement();
+	}
+
+	@Override
+	protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+		super.onScrollChanged(l, t, oldl, oldt);
+		publishViewport();
+		if (mScrollGroup != null) {
+			mScrollGroup.onMemberScrolled(this);
+		}
+	}
+
+	/**
+	 * @return latest published viewport, safe to call from any thread
+	 */
+	public Viewport getViewport() {
+		for (;;) {
+			final int sequence = mViewportSequence;
+			if ((sequence & 1) != 0) {
+				// UI thread is in the middle of publication
+				Thread.yield();
+				continue;
 			}
-			final int overscrollMode = getOverScrollMode();
-			final boolean canOverscroll = overscrollMode == OVER_SCROLL_ALWAYS
-					|| (overscrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS);
+			final Viewport viewport = new Viewport(mViewportVersion,
+					mViewportScrollX, mViewportScrollY, mViewportWidth,
+					mViewportHeight, mViewportScaleFactorX,
+					mViewportScaleFactorY);
+			if (mViewportSequence == sequence) {
+				return viewport;
+			}
+		}
+	}
 
-			overScrollBy(x - oldX, y - oldY, oldX, oldY, getScrollRangeX(),
-					getScrollRangeY(), mOverscrollDistance,
-					mOverscrollDistance, false);
-			onScrollChanged(getScrollX(), getScrollY(), oldX, oldY);
+	/**
+	 * @return true if viewport is still the latest published one, safe to
+	 *         call from any thread
+	 */
+	public boolean isCurrentViewport(Viewport viewport) {
+		return mViewportVersion == viewport.getVersion();
+	}
 
-			if (canOverscroll) {
-				if (y < 0 && oldY >= 0) {
-					mEdgeGlowTop.onAbsorb(y);
-				} else if (y > getScrollRangeY() && oldY <= getScrollRangeY()) {
-					mEdgeGlowBottom.onAbsorb(y);
-				}
+	protected float getViewportScaleFactorX() {
+		return 1.0f;
+	}
+
+	protected float getViewportScaleFactorY() {
+		return 1.0f;
+	}
 
-				if (x < 0 && oldX >= 0) {
-					mEdgeGlowLeft.onAbsorb(x);
-				} else if (x > getScrollRangeX() && oldX <= getScrollRangeX()) {
-					mEdgeGlowRight.onAbsorb(x);
+	/**
+	 * Publishes new {@link Viewport} if scroll position, size or scale changed
+	 * since last publication. Has to be called on UI thread.
+	 */
+	protected void publishViewport() {
+		final int scrollX = getScrollX();
+		final int scrollY = getScrollY();
+		final int width = getWidth();
+		final int height = getHeight();
+		final float scaleFactorX = getViewportScaleFactorX();
+		final float scaleFactorY = getViewportScaleFactorY();
+		if (mViewportScrollX == scrollX && mViewportScrollY == scrollY
+				&& mViewportWidth == width && mViewportHeight == height
+				&& mViewportScaleFactorX == scaleFactorX
+				&& mViewportScaleFactorY == scaleFactorY) {
+			return;
+		}
+		mViewportSequence += 1;
+		mViewportScrollX = scrollX;
+		mViewportScrollY = scrollY;
+		mViewportWidth = width;
+		mViewportHeight = height;
+		mViewportScaleFactorX = scaleFactorX;
+		mViewportScaleFactorY = scaleFactorY;
+		mViewportVersion += 1;
+		mViewportSequence += 1;
+		for (int i = 0; i < mViewportChangeListeners.size(); i++) {
+			mViewportChangeListeners.get(i).onViewportChanged(this);
+		}
+	}
+
+	public void addOnViewportChangeListener(OnViewportChangeListener listener) {
+		mViewportChangeListeners.add(listener);
+	}
+
+	public void removeOnViewportChangeListener(
+			OnViewportChangeListener listener) {
+		mViewportChangeListeners.remove(listener);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		abortRefinement();
+		recycleVelocityTracker();
+		if (mScrollStepScheduled) {
+			removeCallbacks(mScrollStepRunnable);
+			mScrollStepScheduled = false;
+		}
+		if (mContentChangeScheduled) {
+			removeCallbacks(mContentChangeRunnable);
+			dispatchContentChanges();
+		}
+		releaseContentCache();
+		setInteractionState(INTERACTION_IDLE);
+		super.onDetachedFromWindow();
+	}
+
+	@Override
+	public void computeScroll() {
+		if (mScrollGroup != null) {
+			// physics of grouped views is advanced by ScrollGroup before draw
+			return;
+		}
+		final ScrollStats stats = mScrollStats;
+		if (stats == null) {
+			stepScroll();
+			return;
+		}
+		final long start = System.nanoTime();
+		stepScroll();
+		stats.mComputeScrollCount += 1;
+		stats.mComputeScrollNanos += System.nanoTime() - start;
+	}
+
+	void stepScroll() {
+		if (mScroller != null && mScroller.computeScrollOffset()) {
+			int oldX = getScrollX();
+			int oldY = getScrollY();
+			int x = mScroller.getCurrX();
+			int y = mScroller.getCurrY();
+			boolean glowChanged = false;
+			if (oldX != x || oldY != y) {
+				final int overscrollMode = getOverScrollMode();
+				final boolean canOverscroll = overscrollMode == OVER_SCROLL_ALWAYS
+						|| (overscrollMode == OVER_SCROLL_IF_CONTENT_SCROLLS);
+
+				overScrollBy(x - oldX, y - oldY, oldX, oldY, getScrollRangeX(),
+						getScrollRangeY(), mOverscrollDistance,
+						mOverscrollDistance, false);
+				onScrollChanged(getScrollX(), getScrollY(), oldX, oldY);
+
+				if (canOverscroll) {
+					if (y < 0 || y > getScrollRangeY() || x < 0
+							|| x > getScrollRangeX()) {
+						ensureEdgeGlows();
+					}
+					if (y < 0 && oldY >= 0) {
+						mEdgeGlowTop.onAbsorb(y);
+						glowChanged = true;
+					} else if (y > getScrollRangeY() && oldY <= getScrollRangeY()) {
+						mEdgeGlowBottom.onAbsorb(y);
+						glowChanged = true;
+					}
+
+					if (x < 0 && oldX >= 0) {
+						mEdgeGlowLeft.onAbsorb(x);
+						glowChanged = true;
+					} else if (x > getScrollRangeX() && oldX <= getScrollRangeX()) {
+						mEdgeGlowRight.onAbsorb(x);
+						glowChanged = true;
+					}
 				}
 			}
 
+			final boolean scrolled = getScrollX() != oldX
+					|| getScrollY() != oldY;
+			if (glowChanged && (mEdgeGlowView != null || !scrolled)) {
+				postInvalidateEdges();
+			}
 			if (mScroller.isFinished()) {
 				this.stopInteracting();
+			} else if (!scrolled || mScrollGroup != null) {
+				// scrolled view redraws itself and steps again in computeScroll()
+				requestScrollStep();
 			}
+		}
+	}
 
-			oldPostInvalidateOnAnimation();
+	/**
+	 * Requests frame that only advances scroller, without redrawing view
+	 */
+	private void requestScrollStep() {
+		if (mScrollStats != null) {
+			mScrollStats.mFrameRequestCount += 1;
+		}
+		if (mScrollGroup != null) {
+			mScrollGroup.requestFrame(this);
+		} else if (!mScrollStepScheduled) {
+			mScrollStepScheduled = true;
+			ViewCompat.postOnAnimation(this, mScrollStepRunnable);
 		}
 	}
 	
@@ -424,19 +1365,13 @@ public abstract class ScrollableView extends View {
 	@Override
 	protected void onOverScrolled(int scrollX, int scrollY, boolean clampedX,
 			boolean clampedY) {
-		if (DEBUG) {
-			Log.v(TAG, String.format("onOverScrolled: %d, %d, %s, %s", scrollX,
-					scrollY, clampedX ? "true" : "false", clampedY ? "true"
-							: "false"));
-		}
 		// Treat animating scrolls differently; see #computeScroll() for why.
-		if (!mScroller.isFinished()) {
+		if (!isScrollerFinished()) {
 			setScrollXYCompat(scrollX, scrollY);
 
 			if (clampedX || clampedY) {
-				mScroller.springBack(scrollX, scrollY, 0, getScrollRangeX(), 0,
-						getScrollRangeY());
-				oldPostInvalidateOnAnimation();
+				springBack(scrollX, scrollY);
+				requestScrollStep();
 			}
 		} else {
 			super.scrollTo(scrollX, scrollY);
@@ -466,21 +1401,264 @@ public abstract class ScrollableView extends View {
 
 	protected abstract int getWorksheetWidth();
 
+	/**
+	 * Draws content at any scale, independently of current scale of view,
+	 * i.e. for overviews. Rectangle is in coordinates scaled by scaleFactor.
+	 */
+	void drawScaled(Canvas canvas, int left, int top, int right, int bottom,
+			float scaleFactor) {
+		// content of not scalable view is drawn in worksheet coordinates
+		final int restoreCount = canvas.save();
+		canvas.scale(scaleFactor, scaleFactor);
+		onDraw(canvas, (int) Math.floor(left / scaleFactor),
+				(int) Math.floor(top / scaleFactor),
+				(int) Math.ceil(right / scaleFactor),
+				(int) Math.ceil(bottom / scaleFactor));
+		canvas.restoreToCount(restoreCount);
+	}
+
 	protected abstract int getWorksheetHeight();
 
 	protected abstract void onDraw(Canvas canvas, int left, int top, int right,
 			int bottom);
 
+	/**
+	 * Draws transient state (selection, pressed state, cursor) on top of
+	 * content in the same coordinates as
+	 * {@link #onDraw(Canvas, int, int, int, int)}. Redraw it with
+	 * {@link #invalidateOverlay()}.
+	 */
+	protected void onDrawOverlay(Canvas canvas, int left, int top, int right,
+			int bottom) {
+	}
+
+	/**
+	 * Keeps visible content in an offscreen bitmap, so overlay and edge glow
+	 * changes do not call {@link #onDraw(Canvas, int, int, int, int)}. When
+	 * enabled content changes have to be reported by
+	 * {@link #invalidateContent()} or
+	 * {@link #notifyContentChanged(int, int, int, int, long)} instead of
+	 * {@link #invalidate()}.
+	 * 
+	 * On scroll previous content is copied to its new offset and only newly
+	 * exposed strips are drawn. Cache is disabled by default as it costs two
+	 * view sized bitmaps, so {@link #invalidateOverlay()} redraws content too
+	 * unless it is enabled.
+	 * 
+	 * Edge glows are drawn over cached content too, with hardware
+	 * acceleration bind {@link EdgeGlowView} to keep glow frames from
+	 * recording content at all.
+	 */
+	public void setContentCacheEnabled(boolean enabled) {
+		mContentCacheEnabled = enabled;
+		if (!enabled) {
+			releaseContentCache();
+		}
+		invalidate();
+	}
+
+	public boolean isContentCacheEnabled() {
+		return mContentCacheEnabled;
+	}
+
+	/**
+	 * Redraws overlay only, cached content is reused
+	 */
+	public void invalidateOverlay() {
+		invalidate();
+	}
+
+	/**
+	 * Redraws whole visible content
+	 */
+	public void invalidateContent() {
+		mContentCacheValid = false;
+		mContentGeneration += 1;
+		invalidate();
+	}
+
+	/**
+	 * @return number increased on every invalidation of whole content, used
+	 *         to validate additional caches
+	 */
+	int getContentGeneration() {
+		return mContentGeneration;
+	}
+
+	private void releaseContentCache() {
+		if (mContentCache != null) {
+			mContentCache.recycle();
+			mContentCache = null;
+			mContentCacheCanvas = null;
+		}
+		if (mContentCacheBack != null) {
+			mContentCacheBack.recycle();
+			mContentCacheBack = null;
+			mContentCacheBackCanvas = null;
+		}
+		mContentCacheValid = false;
+	}
+
+	/**
+	 * @return width in pixels of strip along left edge that does not move
+	 *         with horizontal scroll, i.e. frozen pane
+	 */
+	int getFixedLeftWidth() {
+		return 0;
+	}
+
+	/**
+	 * @return height in pixels of strip along top edge that does not move
+	 *         with vertical scroll, i.e. frozen pane
+	 */
+	int getFixedTopHeight() {
+		return 0;
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
+		final ScrollStats stats = mScrollStats;
+		if (stats == null) {
+			drawWorksheet(canvas);
+			return;
+		}
+		final long start = System.nanoTime();
+		drawWorksheet(canvas);
+		stats.mDrawCount += 1;
+		stats.mDrawNanos += System.nanoTime() - start;
+	}
+
+	private void drawWorksheet(Canvas canvas) {
 		int left = getScrollX();
 		int top = getScrollY();
 		int right = getWidth() + left;
 		int bottom = getHeight() + top;
 
-		onDraw(canvas, left, top, right, bottom);
+		if (mContentCacheEnabled) {
+			onDrawContentCache(canvas, left, top, right, bottom);
+		} else {
+			// frames invalidating only edge glows are clipped to glow strips
+			final Rect clip = mDrawClip;
+			if (canvas.getClipBounds(clip)) {
+				onDraw(canvas, Math.max(left, clip.left),
+						Math.max(top, clip.top), Math.min(right, clip.right),
+						Math.min(bottom, clip.bottom));
+			}
+		}
+		onDrawOverlay(canvas, left, top, right, bottom);
 
-		onDrawEdges(canvas);
+		if (mEdgeGlowView == null) {
+			onDrawEdges(canvas);
+		}
+	}
+
+	private void onDrawContentCache(Canvas canvas, int left, int top,
+			int right, int bottom) {
+		final int width = right - left;
+		final int height = bottom - top;
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (mContentCache == null || mContentCache.getWidth() != width
+				|| mContentCache.getHeight() != height) {
+			releaseContentCache();
+			mContentCache = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			mContentCacheCanvas = new Canvas(mContentCache);
+		}
+		final float scaleFactorX = getViewportScaleFactorX();
+		final float scaleFactorY = getViewportScaleFactorY();
+		final int dx = left - mContentCacheLeft;
+		final int dy = top - mContentCacheTop;
+		if (!mContentCacheValid || mContentCacheScaleFactorX != scaleFactorX
+				|| mContentCacheScaleFactorY != scaleFactorY
+				|| Math.abs(dx) >= width || Math.abs(dy) >= height) {
+			mContentCacheValid = true;
+			mContentCacheLeft = left;
+			mContentCacheTop = top;
+			mContentCache.eraseColor(0);
+			renderContentCache(left, top, right, bottom);
+			mContentCacheScaleFactorX = scaleFactorX;
+			mContentCacheScaleFactorY = scaleFactorY;
+		} else {
+			if (dx != 0 || dy != 0) {
+				shiftContentCache(left, top, right, bottom, dx, dy);
+			}
+			if (!mContentCacheDirty.isEmpty()) {
+				final Rect dirty = mContentCacheDirty;
+				if (dirty.intersect(left, top, right, bottom)) {
+					renderContentCache(dirty.left, dirty.top, dirty.right,
+							dirty.bottom);
+				}
+			}
+		}
+		mContentCacheDirty.setEmpty();
+		canvas.drawBitmap(mContentCache, left, top, null);
+	}
+
+	/**
+	 * Moves cached content by scroll delta and draws only exposed strips and
+	 * strips fixed on screen
+	 */
+	private void shiftContentCache(int left, int top, int right, int bottom,
+			int dx, int dy) {
+		if (mContentCacheBack == null) {
+			mContentCacheBack = Bitmap.createBitmap(mContentCache.getWidth(),
+					mContentCache.getHeight(), Bitmap.Config.ARGB_8888);
+			mContentCacheBackCanvas = new Canvas(mContentCacheBack);
+		}
+		mContentCacheBack.eraseColor(0);
+		mContentCacheBackCanvas.drawBitmap(mContentCache, -dx, -dy, null);
+		final Bitmap front = mContentCacheBack;
+		final Canvas frontCanvas = mContentCacheBackCanvas;
+		mContentCacheBack = mContentCache;
+		mContentCacheBackCanvas = mContentCacheCanvas;
+		mContentCache = front;
+		mContentCacheCanvas = frontCanvas;
+		mContentCacheLeft = left;
+		mContentCacheTop = top;
+
+		// horizontal strip is drawn in full width, vertical one without it
+		int stripTop = top;
+		int stripBottom = bottom;
+		if (dy > 0) {
+			renderContentCache(left, bottom - dy, right, bottom);
+			stripBottom = bottom - dy;
+		} else if (dy < 0) {
+			renderContentCache(left, top, right, top - dy);
+			stripTop = top - dy;
+		}
+		if (dx > 0) {
+			renderContentCache(right - dx, stripTop, right, stripBottom);
+		} else if (dx < 0) {
+			renderContentCache(left, stripTop, left - dx, stripBottom);
+		}
+
+		// fixed strips were moved with the rest, pixels moved out of them
+		// into scrolled part are wrong too
+		final int fixedTop = getFixedTopHeight();
+		if (fixedTop > 0 && dy != 0) {
+			renderContentCache(left, top, right,
+					top + fixedTop + Math.max(0, -dy));
+		}
+		final int fixedLeft = getFixedLeftWidth();
+		if (fixedLeft > 0 && dx != 0) {
+			renderContentCache(left, top,
+					left + fixedLeft + Math.max(0, -dx), bottom);
+		}
+	}
+
+	/**
+	 * Clears and draws part of content cache given in content coordinates
+	 */
+	private void renderContentCache(int left, int top, int right, int bottom) {
+		final Canvas cacheCanvas = mContentCacheCanvas;
+		final int restoreCount = cacheCanvas.save();
+		cacheCanvas.translate(-mContentCacheLeft, -mContentCacheTop);
+		cacheCanvas.clipRect(left, top, right, bottom);
+		cacheCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+		onDraw(cacheCanvas, left, top, right, bottom);
+		cacheCanvas.restoreToCount(restoreCount);
 	}
 
 	private void onDrawEdges(Canvas canvas) {
@@ -500,14 +1678,13 @@ public abstract class ScrollableView extends View {
 			final int glowWidth = width - paddingLeft - paddingRight;
 			final int glowHeight = height - paddingTop - paddingBottom;
 
+			boolean animating = false;
 			if (!mEdgeGlowTop.isFinished()) {
 				final int restoreCount = canvas.save();
 
 				canvas.translate(relativeLeft, Math.min(0, scrollY));
 				mEdgeGlowTop.setSize(glowWidth, height);
-				if (mEdgeGlowTop.draw(canvas)) {
-					oldPostInvalidateOnAnimation();
-				}
+				animating |= mEdgeGlowTop.draw(canvas);
 				canvas.restoreToCount(restoreCount);
 			}
 			if (!mEdgeGlowBottom.isFinished()) {
@@ -517,9 +1694,7 @@ public abstract class ScrollableView extends View {
 						Math.max(getScrollRangeY(), scrollY) + height);
 				canvas.rotate(180, glowWidth, 0);
 				mEdgeGlowBottom.setSize(glowWidth, height);
-				if (mEdgeGlowBottom.draw(canvas)) {
-					oldPostInvalidateOnAnimation();
-				}
+				animating |= mEdgeGlowBottom.draw(canvas);
 				canvas.restoreToCount(restoreCount);
 			}
 
@@ -528,9 +1703,7 @@ public abstract class ScrollableView extends View {
 				canvas.translate(Math.min(0, scrollX), relativeTop + glowHeight);
 				canvas.rotate(270, 0, 0);
 				mEdgeGlowLeft.setSize(glowHeight, width);
-				if (mEdgeGlowLeft.draw(canvas)) {
-					oldPostInvalidateOnAnimation();
-				}
+				animating |= mEdgeGlowLeft.draw(canvas);
 				canvas.restoreToCount(restoreCount);
 			}
 			if (!mEdgeGlowRight.isFinished()) {
@@ -540,11 +1713,12 @@ public abstract class ScrollableView extends View {
 						relativeTop);
 				canvas.rotate(90, 0, 0);
 				mEdgeGlowRight.setSize(glowHeight, width);
-				if (mEdgeGlowRight.draw(canvas)) {
-					oldPostInvalidateOnAnimation();
-				}
+				animating |= mEdgeGlowRight.draw(canvas);
 				canvas.restoreToCount(restoreCount);
 			}
+			if (animating) {
+				postInvalidateEdges();
+			}
 		}
 	}
 
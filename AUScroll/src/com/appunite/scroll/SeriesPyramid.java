@@ -0,0 +1,646 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Min/max aggregation pyramid over evenly sampled series, for charts drawn
+ * in {@link ScrollableScalableView}.
+ *
+ * Level n keeps min and max of buckets of 2^(n + 4) samples, so min, max,
+ * first and last value of any sample range is read from O(log n) buckets.
+ * {@link #query(int, int, int, double[], double[], double[], double[])}
+ * returns one bucket per pixel column at any scale factor. Values are stored
+ * in primitive arrays and {@link #append(double)} updates pyramid in
+ * amortized O(1).
+ *
+ * Series built from long values keeps them as longs, so values above 2^53
+ * do not lose precision; read them with {@link #getLong(int)},
+ * {@link #minLong(int, int)}, {@link #maxLong(int, int)} and
+ * {@link #query(int, int, int, long[], long[], long[], long[])}. Big series
+ * are built in parallel on executor given to constructor.
+ *
+ * Not thread safe.
+ */
+public class SeriesPyramid {
+
+	// buckets smaller than 16 samples are read directly from values
+	private static final int BASE_SHIFT = 4;
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private final boolean mLong;
+	private final Executor mExecutor;
+	private int mSize = 0;
+
+	private double[] mValues;
+	private double[][] mMin = new double[0][];
+	private double[][] mMax = new double[0][];
+
+	private long[] mLongValues;
+	private long[][] mLongMin = new long[0][];
+	private long[][] mLongMax = new long[0][];
+
+	private double mResultMin;
+	private double mResultMax;
+	private long mResultLongMin;
+	private long mResultLongMax;
+
+	public SeriesPyramid() {
+		this(false, null);
+	}
+
+	/**
+	 * @param longValues
+	 *            true if series keeps long values
+	 * @param executor
+	 *            executor building big series in parallel, i.e.
+	 *            {@link InteractionAwareExecutor}, or null to build on
+	 *            calling thread
+	 */
+	public SeriesPyramid(boolean longValues, Executor executor) {
+		mLong = longValues;
+		mExecutor = executor;
+		if (longValues) {
+			mLongValues = new long[1 << BASE_SHIFT];
+		} else {
+			mValues = new double[1 << BASE_SHIFT];
+		}
+	}
+
+	public SeriesPyramid(double[] values) {
+		this(values, 0, values.length, null);
+	}
+
+	public SeriesPyramid(double[] values, int offset, int count) {
+		this(values, offset, count, null);
+	}
+
+	public SeriesPyramid(double[] values, Executor executor) {
+		this(values, 0, values.length, executor);
+	}
+
+	public SeriesPyramid(double[] values, int offset, int count,
+			Executor executor) {
+		this(false, executor);
+		append(values, offset, count);
+	}
+
+	public SeriesPyramid(long[] values) {
+		this(values, 0, values.length, null);
+	}
+
+	public SeriesPyramid(long[] values, Executor executor) {
+		this(values, 0, values.length, executor);
+	}
+
+	public SeriesPyramid(long[] values, int offset, int count,
+			Executor executor) {
+		this(true, executor);
+		append(values, offset, count);
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public boolean hasLongValues() {
+		return mLong;
+	}
+
+	public double get(int index) {
+		checkIndex(index);
+		return mLong ? mLongValues[index] : mValues[index];
+	}
+
+	public long getLong(int index) {
+		checkLong();
+		checkIndex(index);
+		return mLongValues[index];
+	}
+
+	public void append(long value) {
+		if (!mLong) {
+			append((double) value);
+			return;
+		}
+		if (mSize == mLongValues.length) {
+			grow(mSize + 1);
+		}
+		mLongValues[mSize] = value;
+		onAppended();
+	}
+
+	public void append(double value) {
+		checkDouble();
+		if (mSize == mValues.length) {
+			grow(mSize + 1);
+		}
+		mValues[mSize] = value;
+		onAppended();
+	}
+
+	public void append(double[] values, int offset, int count) {
+		checkDouble();
+		if (mSize + count > mValues.length) {
+			grow(mSize + count);
+		}
+		System.arraycopy(values, offset, mValues, mSize, count);
+		onAppended(count);
+	}
+
+	public void append(long[] values, int offset, int count) {
+		if (!mLong) {
+			if (mSize + count > mValues.length) {
+				grow(mSize + count);
+			}
+			for (int i = 0; i < count; i++) {
+				mValues[mSize + i] = values[offset + i];
+			}
+		} else {
+			if (mSize + count > mLongValues.length) {
+				grow(mSize + count);
+			}
+			System.arraycopy(values, offset, mLongValues, mSize, count);
+		}
+		onAppended(count);
+	}
+
+	/**
+	 * @return minimum of samples in [from, to)
+	 */
+	public double min(int from, int to) {
+		aggregate(from, to);
+		return mResultMin;
+	}
+
+	/**
+	 * @return maximum of samples in [from, to)
+	 */
+	public double max(int from, int to) {
+		aggregate(from, to);
+		return mResultMax;
+	}
+
+	/**
+	 * @return minimum of samples in [from, to), {@link Long#MAX_VALUE} for
+	 *         empty range
+	 */
+	public long minLong(int from, int to) {
+		checkLong();
+		aggregate(from, to);
+		return mResultLongMin;
+	}
+
+	/**
+	 * @return maximum of samples in [from, to), {@link Long#MIN_VALUE} for
+	 *         empty range
+	 */
+	public long maxLong(int from, int to) {
+		checkLong();
+		aggregate(from, to);
+		return mResultLongMax;
+	}
+
+	/**
+	 * Splits samples [from, to) into columns and returns min, max, first and
+	 * last value of each of them. When there are less samples than columns
+	 * nearest sample is returned. Any of out arrays may be null.
+	 */
+	public void query(int from, int to, int columns, double[] outMin,
+			double[] outMax, double[] outFirst, double[] outLast) {
+		from = Math.max(0, from);
+		to = Math.min(mSize, to);
+		if (from >= to) {
+			return;
+		}
+		final long span = to - from;
+		for (int column = 0; column < columns; column++) {
+			final int start = from + (int) (span * column / columns);
+			final int end = Math.max(start + 1, from
+					+ (int) (span * (column + 1) / columns));
+			aggregate(start, end);
+			if (outMin != null) {
+				outMin[column] = mResultMin;
+			}
+			if (outMax != null) {
+				outMax[column] = mResultMax;
+			}
+			if (outFirst != null) {
+				outFirst[column] = get(start);
+			}
+			if (outLast != null) {
+				outLast[column] = get(end - 1);
+			}
+		}
+	}
+
+	/**
+	 * Same as
+	 * {@link #query(int, int, int, double[], double[], double[], double[])}
+	 * for series of long values
+	 */
+	public void query(int from, int to, int columns, long[] outMin,
+			long[] outMax, long[] outFirst, long[] outLast) {
+		checkLong();
+		from = Math.max(0, from);
+		to = Math.min(mSize, to);
+		if (from >= to) {
+			return;
+		}
+		final long span = to - from;
+		for (int column = 0; column < columns; column++) {
+			final int start = from + (int) (span * column / columns);
+			final int end = Math.max(start + 1, from
+					+ (int) (span * (column + 1) / columns));
+			aggregate(start, end);
+			if (outMin != null) {
+				outMin[column] = mResultLongMin;
+			}
+			if (outMax != null) {
+				outMax[column] = mResultLongMax;
+			}
+			if (outFirst != null) {
+				outFirst[column] = mLongValues[start];
+			}
+			if (outLast != null) {
+				outLast[column] = mLongValues[end - 1];
+			}
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= mSize) {
+			throw new IndexOutOfBoundsException();
+		}
+	}
+
+	private void checkLong() {
+		if (!mLong) {
+			throw new IllegalStateException("Series keeps double values");
+		}
+	}
+
+	private void checkDouble() {
+		if (mLong) {
+			throw new IllegalStateException("Series keeps long values");
+		}
+	}
+
+	private void onAppended() {
+		mSize += 1;
+		// complete every bucket that ends at new sample
+		for (int level = 0;; level++) {
+			final int shift = BASE_SHIFT + level;
+			if ((mSize & ((1 << shift) - 1)) != 0) {
+				break;
+			}
+			ensureLevels(level + 1);
+			buildLevel(level, (mSize >> shift) - 1, mSize >> shift);
+		}
+	}
+
+	private void onAppended(int count) {
+		final int oldSize = mSize;
+		mSize += count;
+		final int levels = levelCount(mSize);
+		ensureLevels(levels);
+		for (int level = 0; level < levels; level++) {
+			final int shift = BASE_SHIFT + level;
+			buildLevelParallel(level, oldSize >> shift, mSize >> shift);
+		}
+	}
+
+	private void aggregate(int from, int to) {
+		if (mLong) {
+			aggregateLong(from, to);
+			return;
+		}
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		final int levels = levelCount(mSize);
+		int position = Math.max(0, from);
+		final int end = Math.min(mSize, to);
+		while (position < end) {
+			final int level = bucketLevel(position, end, levels);
+			if (level < 0) {
+				final double value = mValues[position];
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+				position += 1;
+			} else {
+				final int shift = BASE_SHIFT + level;
+				final int bucket = position >> shift;
+				if (mMin[level][bucket] < min) {
+					min = mMin[level][bucket];
+				}
+				if (mMax[level][bucket] > max) {
+					max = mMax[level][bucket];
+				}
+				position += 1 << shift;
+			}
+		}
+		mResultMin = min;
+		mResultMax = max;
+	}
+
+	private void aggregateLong(int from, int to) {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		boolean empty = true;
+		final int levels = levelCount(mSize);
+		int position = Math.max(0, from);
+		final int end = Math.min(mSize, to);
+		while (position < end) {
+			empty = false;
+			final int level = bucketLevel(position, end, levels);
+			if (level < 0) {
+				final long value = mLongValues[position];
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+				position += 1;
+			} else {
+				final int shift = BASE_SHIFT + level;
+				final int bucket = position >> shift;
+				if (mLongMin[level][bucket] < min) {
+					min = mLongMin[level][bucket];
+				}
+				if (mLongMax[level][bucket] > max) {
+					max = mLongMax[level][bucket];
+				}
+				position += 1 << shift;
+			}
+		}
+		mResultLongMin = min;
+		mResultLongMax = max;
+		mResultMin = empty ? Double.POSITIVE_INFINITY : min;
+		mResultMax = empty ? Double.NEGATIVE_INFINITY : max;
+	}
+
+	/**
+	 * @return level of biggest aligned bucket that starts at position and
+	 *         fits range, -1 if there is none
+	 */
+	private static int bucketLevel(int position, int end, int levels) {
+		for (int level = levels - 1; level >= 0; level--) {
+			final int size = 1 << (BASE_SHIFT + level);
+			if ((position & (size - 1)) == 0 && position + size <= end) {
+				return level;
+			}
+		}
+		return -1;
+	}
+
+	private static int levelCount(int size) {
+		int levels = 0;
+		while ((size >> (BASE_SHIFT + levels)) > 0) {
+			levels += 1;
+		}
+		return levels;
+	}
+
+	private void grow(int minCapacity) {
+		final int length = mLong ? mLongValues.length : mValues.length;
+		int capacity = length << 1;
+		if (capacity < minCapacity) {
+			capacity = minCapacity;
+		}
+		if (mLong) {
+			final long[] values = new long[capacity];
+			System.arraycopy(mLongValues, 0, values, 0, mSize);
+			mLongValues = values;
+			for (int level = 0; level < mLongMin.length; level++) {
+				final int buckets = capacity >> (BASE_SHIFT + level);
+				mLongMin[level] = copyOf(mLongMin[level], buckets);
+				mLongMax[level] = copyOf(mLongMax[level], buckets);
+			}
+		} else {
+			final double[] values = new double[capacity];
+			System.arraycopy(mValues, 0, values, 0, mSize);
+			mValues = values;
+			for (int level = 0; level < mMin.length; level++) {
+				final int buckets = capacity >> (BASE_SHIFT + level);
+				mMin[level] = copyOf(mMin[level], buckets);
+				mMax[level] = copyOf(mMax[level], buckets);
+			}
+		}
+	}
+
+	private static double[] copyOf(double[] array, int length) {
+		final double[] copy = new double[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static long[] copyOf(long[] array, int length) {
+		final long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private void ensureLevels(int levels) {
+		if (mLong) {
+			ensureLongLevels(levels);
+			return;
+		}
+		if (levels <= mMin.length) {
+			return;
+		}
+		final double[][] min = new double[levels][];
+		final double[][] max = new double[levels][];
+		System.arraycopy(mMin, 0, min, 0, mMin.length);
+		System.arraycopy(mMax, 0, max, 0, mMax.length);
+		for (int level = mMin.length; level < levels; level++) {
+			final int buckets = mValues.length >> (BASE_SHIFT + level);
+			min[level] = new double[buckets];
+			max[level] = new double[buckets];
+		}
+		mMin = min;
+		mMax = max;
+	}
+
+	private void ensureLongLevels(int levels) {
+		if (levels <= mLongMin.length) {
+			return;
+		}
+		final long[][] min = new long[levels][];
+		final long[][] max = new long[levels][];
+		System.arraycopy(mLongMin, 0, min, 0, mLongMin.length);
+		System.arraycopy(mLongMax, 0, max, 0, mLongMax.length);
+		for (int level = mLongMin.length; level < levels; level++) {
+			final int buckets = mLongValues.length >> (BASE_SHIFT + level);
+			min[level] = new long[buckets];
+			max[level] = new long[buckets];
+		}
+		mLongMin = min;
+		mLongMax = max;
+	}
+
+	private void buildLevelParallel(int level, int fromBucket, int toBucket) {
+		final int chunks = (toBucket - fromBucket) / PARALLEL_THRESHOLD;
+		if (mExecutor == null || chunks < 2) {
+			buildLevel(level, fromBucket, toBucket);
+			return;
+		}
+		final BuildJob job = new BuildJob(level, fromBucket, toBucket, chunks);
+		// executor decides how many of them run at once
+		for (int i = 1; i < chunks; i++) {
+			mExecutor.execute(job);
+		}
+		// calling thread takes chunks that are not started yet, so build
+		// does not wait for executor that holds jobs back
+		job.run();
+		job.await();
+	}
+
+	private void buildLevel(int level, int fromBucket, int toBucket) {
+		if (mLong) {
+			buildLongLevel(level, fromBucket, toBucket);
+			return;
+		}
+		final double[] min = mMin[level];
+		final double[] max = mMax[level];
+		if (level == 0) {
+			final double[] values = mValues;
+			final int bucketSize = 1 << BASE_SHIFT;
+			for (int bucket = fromBucket; bucket < toBucket; bucket++) {
+				final int start = bucket << BASE_SHIFT;
+				double bucketMin = values[start];
+				double bucketMax = bucketMin;
+				for (int i = start + 1; i < start + bucketSize; i++) {
+					final double value = values[i];
+					if (value < bucketMin) {
+						bucketMin = value;
+					}
+					if (value > bucketMax) {
+						bucketMax = value;
+					}
+				}
+				min[bucket] = bucketMin;
+				max[bucket] = bucketMax;
+			}
+		} else {
+			final double[] lowerMin = mMin[level - 1];
+			final double[] lowerMax = mMax[level - 1];
+			for (int bucket = fromBucket; bucket < toBucket; bucket++) {
+				final int lower = bucket << 1;
+				min[bucket] = Math.min(lowerMin[lower], lowerMin[lower + 1]);
+				max[bucket] = Math.max(lowerMax[lower], lowerMax[lower + 1]);
+			}
+		}
+	}
+
+	private void buildLongLevel(int level, int fromBucket, int toBucket) {
+		final long[] min = mLongMin[level];
+		final long[] max = mLongMax[level];
+		if (level == 0) {
+			final long[] values = mLongValues;
+			final int bucketSize = 1 << BASE_SHIFT;
+			for (int bucket = fromBucket; bucket < toBucket; bucket++) {
+				final int start = bucket << BASE_SHIFT;
+				long bucketMin = values[start];
+				long bucketMax = bucketMin;
+				for (int i = start + 1; i < start + bucketSize; i++) {
+					final long value = values[i];
+					if (value < bucketMin) {
+						bucketMin = value;
+					}
+					if (value > bucketMax) {
+						bucketMax = value;
+					}
+				}
+				min[bucket] = bucketMin;
+				max[bucket] = bucketMax;
+			}
+		} else {
+			final long[] lowerMin = mLongMin[level - 1];
+			final long[] lowerMax = mLongMax[level - 1];
+			for (int bucket = fromBucket; bucket < toBucket; bucket++) {
+				final int lower = bucket << 1;
+				min[bucket] = Math.min(lowerMin[lower], lowerMin[lower + 1]);
+				max[bucket] = Math.max(lowerMax[lower], lowerMax[lower + 1]);
+			}
+		}
+	}
+
+	/**
+	 * Builds chunks of level buckets, run by executor workers and by calling
+	 * thread at once. Each chunk is taken by exactly one of them.
+	 */
+	private class BuildJob implements Runnable {
+
+		private final int mLevel;
+		private final int mFromBucket;
+		private final int mBuckets;
+		private final int mChunks;
+		private final AtomicInteger mNextChunk = new AtomicInteger();
+		private final CountDownLatch mDone;
+
+		BuildJob(int level, int fromBucket, int toBucket, int chunks) {
+			mLevel = level;
+			mFromBucket = fromBucket;
+			mBuckets = toBucket - fromBucket;
+			mChunks = chunks;
+			mDone = new CountDownLatch(chunks);
+		}
+
+		@Override
+		public void run() {
+			for (;;) {
+				final int chunk = mNextChunk.getAndIncrement();
+				if (chunk >= mChunks) {
+					return;
+				}
+				final int start = mFromBucket
+						+ (int) ((long) mBuckets * chunk / mChunks);
+				final int end = mFromBucket
+						+ (int) ((long) mBuckets * (chunk + 1) / mChunks);
+				try {
+					buildLevel(mLevel, start, end);
+				} finally {
+					mDone.countDown();
+				}
+			}
+		}
+
+		void await() {
+			boolean interrupted = false;
+			for (;;) {
+				try {
+					mDone.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Polyline with precomputed Douglas-Peucker simplifications for a few scale
+ * levels. {@link #draw(Canvas, float, float, float, float, float, Paint)}
+ * picks the coarsest level that still stays within pixel tolerance at given
+ * scale and strokes only chunks intersecting visible rectangle, so draw cost
+ * depends on screen size rather than on vertex count.
+ */
+public class SimplifiedPolyline {
+
+	public static final float[] DEFAULT_SCALE_LEVELS = new float[] { 0.05f,
+			0.1f, 0.25f, 0.5f, 1.0f };
+	public static final float DEFAULT_PIXEL_TOLERANCE = 0.5f;
+
+	private static final int SEGMENTS_PER_CHUNK = 128;
+
+	private final float[] mScaleLevels;
+	private final Level[] mLevels;
+	private final Level mFullLevel;
+
+	/**
+	 * @param points
+	 *            x, y pairs in worksheet coordinates
+	 */
+	public SimplifiedPolyline(float[] points) {
+		this(points, DEFAULT_SCALE_LEVELS, DEFAULT_PIXEL_TOLERANCE);
+	}
+
+	/**
+	 * @param points
+	 *            x, y pairs in worksheet coordinates
+	 * @param scaleLevels
+	 *            strictly ascending positive scale factors for which
+	 *            simplified versions are built
+	 * @param pixelTolerance
+	 *            maximal on-screen error of simplified version
+	 */
+	public SimplifiedPolyline(float[] points, float[] scaleLevels,
+			float pixelTolerance) {
+		if ((points.length & 1) != 0) {
+			throw new IllegalArgumentException("points must be x, y pairs");
+		}
+		for (int i = 0; i < scaleLevels.length; i++) {
+			if (scaleLevels[i] <= 0.0f) {
+				throw new IllegalArgumentException(
+						"scaleLevels must be positive");
+			}
+			if (i > 0 && scaleLevels[i] <= scaleLevels[i - 1]) {
+				throw new IllegalArgumentException(
+						"scaleLevels must be ascending");
+			}
+		}
+		mScaleLevels = scaleLevels.clone();
+		mLevels = new Level[scaleLevels.length];
+		final int pointCount = points.length >> 1;
+		for (int i = 0; i < scaleLevels.length; i++) {
+			final float tolerance = pixelTolerance / scaleLevels[i];
+			final boolean[] keep = simplify(points, pointCount, tolerance
+					* tolerance);
+			mLevels[i] = new Level(points, pointCount, keep);
+		}
+		mFullLevel = new Level(points, pointCount, null);
+	}
+
+	public int getVertexCount(float scaleFactor) {
+		return levelFor(scaleFactor).mSegmentCount + 1;
+	}
+
+	/**
+	 * Draws polyline on canvas that is already scaled by scaleFactor.
+	 * Visible rectangle is in worksheet coordinates.
+	 */
+	public void draw(Canvas canvas, float left, float top, float right,
+			float bottom, float scaleFactor, Paint paint) {
+		final Level level = levelFor(scaleFactor);
+		final float[] bounds = level.mChunkBounds;
+		final int chunkCount = level.mChunkCount;
+		// grow visible rectangle by stroke so edges of clipped chunks stay
+		final float margin = paint.getStrokeWidth();
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			final int offset = chunk << 2;
+			if (bounds[offset] > right + margin
+					|| bounds[offset + 1] > bottom + margin
+					|| bounds[offset + 2] < left - margin
+					|| bounds[offset + 3] < top - margin) {
+				continue;
+			}
+			final int firstSegment = chunk * SEGMENTS_PER_CHUNK;
+			final int segments = Math.min(SEGMENTS_PER_CHUNK,
+					level.mSegmentCount - firstSegment);
+			canvas.drawLines(level.mSegments, firstSegment << 2,
+					segments << 2, paint);
+		}
+	}
+
+	private Level levelFor(float scaleFactor) {
+		// smallest level scale that is not smaller than current scale keeps
+		// error below tolerance
+		for (int i = 0; i < mScaleLevels.length; i++) {
+			if (mScaleLevels[i] >= scaleFactor) {
+				return mLevels[i];
+			}
+		}
+		return mFullLevel;
+	}
+
+	private static boolean[] simplify(float[] points, int pointCount,
+			float toleranceSquared) {
+		final boolean[] keep = new boolean[pointCount];
+		if (pointCount == 0) {
+			return keep;
+		}
+		keep[0] = true;
+		keep[pointCount - 1] = true;
+		// iterative Douglas-Peucker, recursion would overflow on long lines
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		stack[stackSize++] = pointCount - 1;
+		while (stackSize > 0) {
+			final int last = stack[--stackSize];
+			final int first = stack[--stackSize];
+			if (last - first < 2) {
+				continue;
+			}
+			final float ax = points[first << 1];
+			final float ay = points[(first << 1) + 1];
+			final float dx = points[last << 1] - ax;
+			final float dy = points[(last << 1) + 1] - ay;
+			final float lengthSquared = dx * dx + dy * dy;
+
+			float maxDistance = -1.0f;
+			int maxIndex = -1;
+			for (int i = first + 1; i < last; i++) {
+				final float px = points[i << 1] - ax;
+				final float py = points[(i << 1) + 1] - ay;
+				final float distance;
+				if (lengthSquared == 0.0f) {
+					distance = px * px + py * py;
+				} else {
+					final float t = Math.max(0.0f,
+							Math.min(1.0f, (px * dx + py * dy) / lengthSquared));
+					final float ex = px - t * dx;
+					final float ey = py - t * dy;
+					distance = ex * ex + ey * ey;
+				}
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					maxIndex = i;
+				}
+			}
+			if (maxDistance > toleranceSquared) {
+				keep[maxIndex] = true;
+				if (stackSize + 4 > stack.length) {
+					final int[] newStack = new int[stack.length << 1];
+					System.arraycopy(stack, 0, newStack, 0, stackSize);
+					stack = newStack;
+				}
+				stack[stackSize++] = first;
+				stack[stackSize++] = maxIndex;
+				stack[stackSize++] = maxIndex;
+				stack[stackSize++] = last;
+			}
+		}
+		return keep;
+	}
+
+	private static class Level {
+		final float[] mSegments;
+		final int mSegmentCount;
+		final float[] mChunkBounds;
+		final int mChunkCount;
+
+		Level(float[] points, int pointCount, boolean[] keep) {
+			int kept = 0;
+			for (int i = 0; i < pointCount; i++) {
+				if (keep == null || keep[i]) {
+					kept += 1;
+				}
+			}
+			mSegmentCount = Math.max(0, kept - 1);
+			// drawLines() takes separate x0, y0, x1, y1 for every segment
+			mSegments = new float[mSegmentCount << 2];
+			int segment = 0;
+			float lastX = 0.0f;
+			float lastY = 0.0f;
+			boolean hasLast = false;
+			for (int i = 0; i < pointCount; i++) {
+				if (keep != null && !keep[i]) {
+					continue;
+				}
+				final float x = points[i << 1];
+				final float y = points[(i << 1) + 1];
+				if (hasLast) {
+					final int offset = segment << 2;
+					mSegments[offset] = lastX;
+					mSegments[offset + 1] = lastY;
+					mSegments[offset + 2] = x;
+					mSegments[offset + 3] = y;
+					segment += 1;
+				}
+				lastX = x;
+				lastY = y;
+				hasLast = true;
+			}
+
+			mChunkCount = (mSegmentCount + SEGMENTS_PER_CHUNK - 1)
+					/ SEGMENTS_PER_CHUNK;
+			mChunkBounds = new float[mChunkCount << 2];
+			for (int chunk = 0; chunk < mChunkCount; chunk++) {
+				float minX = Float.POSITIVE_INFINITY;
+				float minY = Float.POSITIVE_INFINITY;
+				float maxX = Float.NEGATIVE_INFINITY;
+				float maxY = Float.NEGATIVE_INFINITY;
+				final int end = Math.min(mSegmentCount, (chunk + 1)
+						* SEGMENTS_PER_CHUNK) << 2;
+				for (int i = (chunk * SEGMENTS_PER_CHUNK) << 2; i < end; i += 2) {
+					final float x = mSegments[i];
+					final float y = mSegments[i + 1];
+					minX = Math.min(minX, x);
+					minY = Math.min(minY, y);
+					maxX = Math.max(maxX, x);
+					maxY = Math.max(maxY, y);
+				}
+				final int offset = chunk << 2;
+				mChunkBounds[offset] = minX;
+				mChunkBounds[offset + 1] = minY;
+				mChunkBounds[offset + 2] = maxX;
+				mChunkBounds[offset + 3] = maxY;
+			}
+		}
+	}
+}
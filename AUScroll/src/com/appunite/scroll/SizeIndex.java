@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.Arrays;
+
+/**
+ * Sizes of consecutive items (rows or columns) kept in a Fenwick tree, so
+ * offset of item, item at offset and single size change cost O(log n).
+ */
+public class SizeIndex {
+
+	private int mCount;
+	private int[] mSizes;
+	private long[] mTree;
+	private long mTotal;
+
+	public SizeIndex() {
+		this(0, 0);
+	}
+
+	public SizeIndex(int count, int defaultSize) {
+		reset(count, defaultSize);
+	}
+
+	/**
+	 * Replaces all items by count items of defaultSize, O(n)
+	 */
+	public void reset(int count, int defaultSize) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count < 0");
+		}
+		mCount = count;
+		mSizes = new int[count];
+		Arrays.fill(mSizes, defaultSize);
+		mTree = new long[count + 1];
+		for (int i = 1; i <= count; i++) {
+			mTree[i] += defaultSize;
+			final int parent = i + (i & -i);
+			if (parent <= count) {
+				mTree[parent] += mTree[i];
+			}
+		}
+		mTotal = (long) count * defaultSize;
+	}
+
+	public int getCount() {
+		return mCount;
+	}
+
+	public int getSize(int index) {
+		return mSizes[index];
+	}
+
+	public long getTotal() {
+		return mTotal;
+	}
+
+	public void setSize(int index, int size) {
+		final int delta = size - mSizes[index];
+		if (delta == 0) {
+			return;
+		}
+		mSizes[index] = size;
+		mTotal += delta;
+		for (int i = index + 1; i <= mCount; i += i & -i) {
+			mTree[i] += delta;
+		}
+	}
+
+	/**
+	 * @return sum of sizes of items before index
+	 */
+	public long getOffset(int index) {
+		long sum = 0;
+		for (int i = index; i > 0; i -= i & -i) {
+			sum += mTree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return index of item containing offset, clamped to [0, count - 1], or
+	 *         -1 if index is empty
+	 */
+	public int getIndexAt(long offset) {
+		if (mCount == 0) {
+			return -1;
+		}
+		if (offset <= 0) {
+			return 0;
+		}
+		int index = 0;
+		long remaining = offset;
+		for (int step = Integer.highestOneBit(mCount); step > 0; step >>= 1) {
+			final int next = index + step;
+			if (next <= mCount && mTree[next] <= remaining) {
+				index = next;
+				remaining -= mTree[next];
+			}
+		}
+		return Math.min(index, mCount - 1);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.Arrays;
+
+/**
+ * Sorted positions in worksheet (unscaled) coordinates on which flings and
+ * spring backs of {@link ScrollableView} settle. Lookups are binary searches,
+ * O(log n).
+ */
+public class SnapPoints {
+
+	private final int[] mPositions;
+
+	/**
+	 * @param positions
+	 *            snap positions in any order, array is copied
+	 */
+	public SnapPoints(int[] positions) {
+		this(positions, 0, positions.length);
+	}
+
+	public SnapPoints(int[] positions, int offset, int count) {
+		mPositions = new int[count];
+		System.arraycopy(positions, offset, mPositions, 0, count);
+		Arrays.sort(mPositions);
+	}
+
+	private SnapPoints(int[] sortedPositions, boolean unused) {
+		mPositions = sortedPositions;
+	}
+
+	/**
+	 * Snap points every spacing, useful for paging
+	 */
+	public static SnapPoints uniform(int spacing, int count) {
+		if (spacing <= 0) {
+			throw new IllegalArgumentException("spacing <= 0");
+		}
+		final int[] positions = new int[count];
+		for (int i = 0; i < count; i++) {
+			positions[i] = i * spacing;
+		}
+		return new SnapPoints(positions, false);
+	}
+
+	/**
+	 * Snap points on starts of all items of index and on its end, O(n)
+	 */
+	public static SnapPoints fromSizeIndex(SizeIndex index) {
+		final int count = index.getCount();
+		final int[] positions = new int[count + 1];
+		long offset = 0;
+		for (int i = 0; i < count; i++) {
+			positions[i] = (int) offset;
+			offset += index.getSize(i);
+		}
+		positions[count] = (int) offset;
+		return new SnapPoints(positions, false);
+	}
+
+	public int getCount() {
+		return mPositions.length;
+	}
+
+	public int getPosition(int index) {
+		return mPositions[index];
+	}
+
+	/**
+	 * @return index of snap point nearest to position or -1 if there are no
+	 *         snap points
+	 */
+	public int getNearestIndex(float position) {
+		final int count = mPositions.length;
+		if (count == 0) {
+			return -1;
+		}
+		final int ceiling = getCeilingIndex(position);
+		if (ceiling == count) {
+			return count - 1;
+		}
+		if (ceiling == 0) {
+			return 0;
+		}
+		final float toCeiling = mPositions[ceiling] - position;
+		final float toFloor = position - mPositions[ceiling - 1];
+		return toFloor <= toCeiling ? ceiling - 1 : ceiling;
+	}
+
+	/**
+	 * @return index of first snap point greater than position or -1 if there
+	 *         is none
+	 */
+	public int getHigherIndex(float position) {
+		int low = 0;
+		int high = mPositions.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (mPositions[middle] <= position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low == mPositions.length ? -1 : low;
+	}
+
+	/**
+	 * @return index of last snap point lower than position or -1 if there is
+	 *         none
+	 */
+	public int getLowerIndex(float position) {
+		return getCeilingIndex(position) - 1;
+	}
+
+	/**
+	 * @return index of first snap point greater or equal to position, count
+	 *         if there is none
+	 */
+	private int getCeilingIndex(float position) {
+		int low = 0;
+		int high = mPositions.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (mPositions[middle] < position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.graphics.PointF;
+
+/**
+ * Extrapolates pointer position from recent samples with least squares line
+ * fit. Prediction is damped when samples do not lie on a line and dropped
+ * when the pointer turns back, so noise and stops do not make content jump
+ * ahead of finger.
+ */
+class TouchPredictor {
+
+	private static final int MAX_SAMPLES = 8;
+	private static final int MIN_SAMPLES = 3;
+	private static final long MAX_SAMPLE_AGE_MILLIS = 60;
+	private static final long MIN_SPAN_MILLIS = 8;
+
+	private final float mMaxResidual;
+	private final float mMaxDistance;
+
+	// ring buffer of samples, mHead is the newest one
+	private final long[] mTimes = new long[MAX_SAMPLES];
+	private final float[] mX = new float[MAX_SAMPLES];
+	private final float[] mY = new float[MAX_SAMPLES];
+	private int mHead = -1;
+	private int mCount = 0;
+
+	/**
+	 * @param maxResidual
+	 *            root mean square distance of samples from fitted line in
+	 *            pixels above which nothing is predicted
+	 * @param maxDistance
+	 *            maximal distance in pixels of prediction from last sample
+	 */
+	TouchPredictor(float maxResidual, float maxDistance) {
+		mMaxResidual = maxResidual;
+		mMaxDistance = maxDistance;
+	}
+
+	void reset() {
+		mHead = -1;
+		mCount = 0;
+	}
+
+	void addSample(long time, float x, float y) {
+		if (mCount > 0 && time <= mTimes[mHead]) {
+			// duplicated or out of order sample would break the fit
+			return;
+		}
+		mHead = (mHead + 1) % MAX_SAMPLES;
+		mTimes[mHead] = time;
+		mX[mHead] = x;
+		mY[mHead] = y;
+		if (mCount < MAX_SAMPLES) {
+			mCount += 1;
+		}
+	}
+
+	/**
+	 * @param out
+	 *            predicted position, or the last sample if there is no
+	 *            confident prediction
+	 * @return true if position was predicted
+	 */
+	boolean predict(long time, PointF out) {
+		if (mCount == 0) {
+			return false;
+		}
+		final long lastTime = mTimes[mHead];
+		final float lastX = mX[mHead];
+		final float lastY = mY[mHead];
+		out.set(lastX, lastY);
+
+		// means of samples young enough, time relative to last sample
+		int count = 0;
+		float sumT = 0.0f;
+		float sumX = 0.0f;
+		float sumY = 0.0f;
+		long span = 0;
+		for (int i = 0; i < mCount; i++) {
+			final int index = (mHead - i + MAX_SAMPLES) % MAX_SAMPLES;
+			final long age = lastTime - mTimes[index];
+			if (age > MAX_SAMPLE_AGE_MILLIS) {
+				break;
+			}
+			span = age;
+			sumT -= age;
+			sumX += mX[index];
+			sumY += mY[index];
+			count += 1;
+		}
+		if (count < MIN_SAMPLES || span < MIN_SPAN_MILLIS
+				|| time <= lastTime) {
+			return false;
+		}
+		final float meanT = sumT / count;
+		final float meanX = sumX / count;
+		final float meanY = sumY / count;
+
+		float varianceT = 0.0f;
+		float covarianceX = 0.0f;
+		float covarianceY = 0.0f;
+		for (int i = 0; i < count; i++) {
+			final int index = (mHead - i + MAX_SAMPLES) % MAX_SAMPLES;
+			final float t = (mTimes[index] - lastTime) - meanT;
+			varianceT += t * t;
+			covarianceX += t * (mX[index] - meanX);
+			covarianceY += t * (mY[index] - meanY);
+		}
+		// velocities in pixels per millisecond
+		final float velocityX = covarianceX / varianceT;
+		final float velocityY = covarianceY / varianceT;
+
+		float residual = 0.0f;
+		for (int i = 0; i < count; i++) {
+			final int index = (mHead - i + MAX_SAMPLES) % MAX_SAMPLES;
+			final float t = (mTimes[index] - lastTime) - meanT;
+			final float dx = mX[index] - (meanX + velocityX * t);
+			final float dy = mY[index] - (meanY + velocityY * t);
+			residual += dx * dx + dy * dy;
+		}
+		residual = (float) Math.sqrt(residual / count);
+		if (residual >= mMaxResidual) {
+			return false;
+		}
+
+		// pointer turned back since previous sample
+		final int previous = (mHead - 1 + MAX_SAMPLES) % MAX_SAMPLES;
+		final float stepX = lastX - mX[previous];
+		final float stepY = lastY - mY[previous];
+		if (stepX * velocityX + stepY * velocityY < 0.0f) {
+			return false;
+		}
+
+		final float confidence = 1.0f - residual / mMaxResidual;
+		final long horizon = time - lastTime;
+		float dx = velocityX * horizon * confidence;
+		float dy = velocityY * horizon * confidence;
+		final float distance = (float) Math.sqrt(dx * dx + dy * dy);
+		if (distance > mMaxDistance) {
+			dx *= mMaxDistance / distance;
+			dy *= mMaxDistance / distance;
+		}
+		out.set(lastX + dx, lastY + dy);
+		return true;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+/**
+ * Immutable snapshot of visible part of worksheet. Safe to pass between
+ * threads.
+ *
+ * Every published snapshot gets higher version, so background workers can
+ * compare version of viewport they started with against the current one and
+ * drop stale work.
+ */
+public final class Viewport {
+
+	private final long mVersion;
+	private final int mScrollX;
+	private final int mScrollY;
+	private final int mWidth;
+	private final int mHeight;
+	private final float mScaleFactorX;
+	private final float mScaleFactorY;
+
+	public Viewport(long version, int scrollX, int scrollY, int width,
+			int height, float scaleFactorX, float scaleFactorY) {
+		mVersion = version;
+		mScrollX = scrollX;
+		mScrollY = scrollY;
+		mWidth = width;
+		mHeight = height;
+		mScaleFactorX = scaleFactorX;
+		mScaleFactorY = scaleFactorY;
+	}
+
+	public long getVersion() {
+		return mVersion;
+	}
+
+	public int getScrollX() {
+		return mScrollX;
+	}
+
+	public int getScrollY() {
+		return mScrollY;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	public float getScaleFactorX() {
+		return mScaleFactorX;
+	}
+
+	public float getScaleFactorY() {
+		return mScaleFactorY;
+	}
+
+	public boolean same(int scrollX, int scrollY, int width, int height,
+			float scaleFactorX, float scaleFactorY) {
+		return mScrollX == scrollX && mScrollY == scrollY && mWidth == width
+				&& mHeight == height && mScaleFactorX == scaleFactorX
+				&& mScaleFactorY == scaleFactorY;
+	}
+
+	@Override
+	public String toString() {
+		return "Viewport #" + mVersion + " [" + mScrollX + ", " + mScrollY
+				+ ", " + mWidth + "x" + mHeight + ", scale " + mScaleFactorX
+				+ "x" + mScaleFactorY + "]";
+	}
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Rasterizes region of worksheet at given scale tile by tile on executor
+ * threads, so exported image can be much larger than available memory.
+ * Output is streamed either as separate tiles or as single PNG image. Memory
+ * used is bounded by one tile per parallel job and, for PNG, one row of
+ * tiles.
+ *
+ * Export methods block, so call them from background thread. They can be
+ * stopped from any thread with {@link #cancel()}.
+ */
+public class WorksheetExporter {
+
+	/**
+	 * Draws worksheet with the same contract as
+	 * {@link ScrollableScalableView#onDraw(Canvas, int, int, int, int, float, float)}
+	 * . Called concurrently from executor threads.
+	 */
+	public interface Renderer {
+		void draw(Canvas canvas, int left, int top, int right, int bottom,
+				float scaleFactorX, float scaleFactorY);
+	}
+
+	/**
+	 * Receives rendered tiles. Called concurrently from executor threads,
+	 * tile bitmap is reused after return.
+	 */
+	public interface TileSink {
+		/**
+		 * @param left
+		 *            position of tile in exported image
+		 * @param top
+		 *            position of tile in exported image
+		 */
+		void onTile(int column, int row, int left, int top, Bitmap tile)
+				throws IOException;
+	}
+
+	public interface OnExportProgressListener {
+		/**
+		 * Called on exporting thread after every finished tile
+		 */
+		void onExportProgress(WorksheetExporter exporter, int finishedTiles,
+				int tileCount);
+	}
+
+	private static final int DEFAULT_TILE_SIZE = 256;
+
+	private final Renderer mRenderer;
+	private final Executor mExecutor;
+	private final int mParallelism;
+	private int mTileSize = DEFAULT_TILE_SIZE;
+	private int mBackgroundColor = 0;
+	private OnExportProgressListener mOnExportProgressListener = null;
+	private volatile boolean mCancelled = false;
+
+	/**
+	 * @param executor
+	 *            executor rendering tiles, i.e. {@link InteractionAwareExecutor}
+	 *            so export does not compete with scrolling
+	 * @param parallelism
+	 *            maximal number of tiles rendered at once
+	 */
+	public WorksheetExporter(Renderer renderer, Executor executor,
+			int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism < 1");
+		}
+		mRenderer = renderer;
+		mExecutor = executor;
+		mParallelism = parallelism;
+	}
+
+	public void setTileSize(int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("tileSize < 1");
+		}
+		mTileSize = tileSize;
+	}
+
+	public int getTileSize() {
+		return mTileSize;
+	}
+
+	public void setBackgroundColor(int color) {
+		mBackgroundColor = color;
+	}
+
+	public void setOnExportProgressListener(OnExportProgressListener listener) {
+		mOnExportProgressListener = listener;
+	}
+
+	/**
+	 * Stops running export. If no export is running the next one is stopped
+	 * before it starts.
+	 */
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	/**
+	 * @param region
+	 *            exported region in worksheet (unscaled) coordinates
+	 * @return false if export was cancelled
+	 */
+	public boolean exportTiles(Rect region, float scaleFactor, TileSink sink)
+			throws IOException {
+		return export(region, scaleFactor, sink, null);
+	}
+
+	/**
+	 * Writes region as single RGBA PNG image. Stream is not closed.
+	 *
+	 * @param region
+	 *            exported region in worksheet (unscaled) coordinates
+	 * @return false if export was cancelled, output is incomplete then
+	 */
+	public boolean exportPng(Rect region, float scaleFactor, OutputStream out)
+			throws IOException {
+		return export(region, scaleFactor, null, out);
+	}
+
+	/**
+	 * @return sink writing every tile to directory as
+	 *         &lt;row&gt;_&lt;column&gt;.png or .jpg
+	 */
+	public static TileSink newFileSink(final File directory,
+			final Bitmap.CompressFormat format, final int quality) {
+		final String extension = format == Bitmap.CompressFormat.JPEG ? ".jpg"
+				: ".png";
+		return new TileSink() {
+
+			@Override
+			public void onTile(int column, int row, int left, int top,
+					Bitmap tile) throws IOException {
+				final File file = new File(directory, row + "_" + column
+						+ extension);
+				final OutputStream out = new BufferedOutputStream(
+						new FileOutputStream(file));
+				try {
+					if (!tile.compress(format, quality, out)) {
+						throw new IOException("Could not compress " + file);
+					}
+				} finally {
+					out.close();
+				}
+			}
+		};
+	}
+
+	private boolean export(Rect region, float scaleFactor, TileSink sink,
+			OutputStream out) throws IOException {
+		if (scaleFactor <= 0.0f) {
+			throw new IllegalArgumentException("scaleFactor <= 0");
+		}
+		final int originX = Math.round(region.left * scaleFactor);
+		final int originY = Math.round(region.top * scaleFactor);
+		final int width = Math.round(region.right * scaleFactor) - originX;
+		final int height = Math.round(region.bottom * scaleFactor) - originY;
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Empty region: " + region);
+		}
+		final int tileSize = mTileSize;
+		final int columns = (width + tileSize - 1) / tileSize;
+		final int rows = (height + tileSize - 1) / tileSize;
+		final int tileCount = columns * rows;
+
+		final PngEncoder encoder = out == null ? null : new PngEncoder(out,
+				width, height);
+		final Export export = new Export(scaleFactor, originX, originY, width,
+				height, sink, out == null ? null : new int[width * tileSize]);
+		int finished = 0;
+		try {
+			for (int row = 0; row < rows; row++) {
+				if (mCancelled) {
+					return false;
+				}
+				for (int column = 0; column < columns; column++) {
+					mExecutor.execute(new TileJob(export, column, row));
+					export.mPending += 1;
+				}
+				// the whole row is waited for, so PNG strip is complete and
+				// tile bitmaps are not recycled while jobs still use them
+				while (export.mPending > 0) {
+					final Throwable error = export.take();
+					export.mPending -= 1;
+					if (error != null) {
+						mCancelled = true;
+						export.drain();
+						throw asIOException(error);
+					}
+					finished += 1;
+					if (mOnExportProgressListener != null) {
+						mOnExportProgressListener.onExportProgress(this,
+								finished, tileCount);
+					}
+				}
+				if (mCancelled) {
+					return false;
+				}
+				if (encoder != null) {
+					final int stripHeight = Math.min(tileSize, height - row
+							* tileSize);
+					encoder.writeRows(export.mStrip, stripHeight);
+				}
+			}
+			if (encoder != null) {
+				encoder.finish();
+			}
+			return true;
+		} finally {
+			if (encoder != null) {
+				encoder.release();
+			}
+			export.release();
+			mCancelled = false;
+		}
+	}
+
+	private static IOException asIOException(Throwable error) {
+		if (error instanceof IOException) {
+			return (IOException) error;
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		}
+		if (error instanceof Error) {
+			throw (Error) error;
+		}
+		final IOException exception = new IOException("Export failed");
+		exception.initCause(error);
+		return exception;
+	}
+
+	private static class Tile {
+		final Bitmap mBitmap;
+		final Canvas mCanvas;
+
+		Tile(int width, int height) {
+			mBitmap = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+			mCanvas = new Canvas(mBitmap);
+		}
+	}
+
+	/**
+	 * State shared by tile jobs of single export
+	 */
+	private class Export {
+		private final Throwable mSuccess = new Throwable();
+
+		final float mScaleFactor;
+		final int mOriginX;
+		final int mOriginY;
+		final int mWidth;
+		final int mHeight;
+		final TileSink mSink;
+		final int[] mStrip;
+		// touched only by exporting thread
+		int mPending = 0;
+
+		private final BlockingQueue<Tile> mTiles;
+		private final BlockingQueue<Throwable> mResults = new LinkedBlockingQueue<Throwable>();
+
+		Export(float scaleFactor, int originX, int originY, int width,
+				int height, TileSink sink, int[] strip) {
+			mScaleFactor = scaleFactor;
+			mOriginX = originX;
+			mOriginY = originY;
+			mWidth = width;
+			mHeight = height;
+			mSink = sink;
+			mStrip = strip;
+			mTiles = new ArrayBlockingQueue<Tile>(mParallelism);
+			for (int i = 0; i < mParallelism; i++) {
+				mTiles.add(new Tile(mTileSize, mTileSize));
+			}
+		}
+
+		void finish(Throwable error) {
+			mResults.add(error == null ? mSuccess : error);
+		}
+
+		Throwable take() throws IOException {
+			try {
+				final Throwable result = mResults.take();
+				return result == mSuccess ? null : result;
+			} catch (InterruptedException e) {
+				mCancelled = true;
+				Thread.currentThread().interrupt();
+				drain();
+				throw new IOException("Export interrupted");
+			}
+		}
+
+		/**
+		 * Waits for already started jobs, they skip work when cancelled
+		 */
+		void drain() {
+			boolean interrupted = false;
+			while (mPending > 0) {
+				try {
+					mResults.take();
+					mPending -= 1;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void release() {
+			drain();
+			Tile tile;
+			while ((tile = mTiles.poll()) != null) {
+				tile.mBitmap.recycle();
+			}
+		}
+	}
+
+	private class TileJob implements Runnable {
+		private final Export mExport;
+		private final int mColumn;
+		private final int mRow;
+
+		TileJob(Export export, int column, int row) {
+			mExport = export;
+			mColumn = column;
+			mRow = row;
+		}
+
+		@Override
+		public void run() {
+			if (mCancelled) {
+				mExport.finish(null);
+				return;
+			}
+			Tile tile = null;
+			try {
+				tile = mExport.mTiles.take();
+				render(tile);
+				mExport.finish(null);
+			} catch (Throwable e) {
+				mExport.finish(e);
+			} finally {
+				if (tile != null) {
+					mExport.mTiles.add(tile);
+				}
+			}
+		}
+
+		private void render(Tile pooled) throws IOException {
+			final Export export = mExport;
+			final int tileSize = mTileSize;
+			final int x = mColumn * tileSize;
+			final int y = mRow * tileSize;
+			final int width = Math.min(tileSize, export.mWidth - x);
+			final int height = Math.min(tileSize, export.mHeight - y);
+			// sink gets exactly sized bitmap, edge tiles are rare
+			final boolean edge = export.mSink != null
+					&& (width != tileSize || height != tileSize);
+			final Tile tile = edge ? new Tile(width, height) : pooled;
+			try {
+				final int left = export.mOriginX + x;
+				final int top = export.mOriginY + y;
+				tile.mBitmap.eraseColor(mBackgroundColor);
+				final Canvas canvas = tile.mCanvas;
+				final int restoreCount = canvas.save();
+				canvas.clipRect(0, 0, width, height);
+				canvas.translate(-left, -top);
+				mRenderer.draw(canvas, left, top, left + width, top + height,
+						export.mScaleFactor, export.mScaleFactor);
+				canvas.restoreToCount(restoreCount);
+
+				if (export.mSink != null) {
+					export.mSink.onTile(mColumn, mRow, x, y, tile.mBitmap);
+				} else {
+					// jobs write disjoint parts of strip
+					tile.mBitmap.getPixels(export.mStrip, x, export.mWidth, 0,
+							0, width, height);
+				}
+			} finally {
+				if (edge) {
+					tile.mBitmap.recycle();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Minimal streaming PNG writer: 8 bit RGBA, sub filter
+	 */
+	private static class PngEncoder {
+		private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13,
+				10, 26, 10 };
+		private static final int CHUNK_SIZE = 1 << 16;
+
+		private final OutputStream mOut;
+		private final int mWidth;
+		private final CRC32 mCrc = new CRC32();
+		private final Deflater mDeflater = new Deflater();
+		private final DeflaterOutputStream mImageData;
+		private final byte[] mRow;
+		private final byte[] mChunkHeader = new byte[8];
+
+		PngEncoder(OutputStream out, int width, int height) throws IOException {
+			mOut = out;
+			mWidth = width;
+			mRow = new byte[1 + width * 4];
+			mOut.write(SIGNATURE);
+			final byte[] header = new byte[13];
+			putInt(header, 0, width);
+			putInt(header, 4, height);
+			header[8] = 8; // bit depth
+			header[9] = 6; // RGBA
+			writeChunk("IHDR", header, 0, header.length);
+			mImageData = new DeflaterOutputStream(new OutputStream() {
+				private final byte[] mBuffer = new byte[CHUNK_SIZE];
+				private int mCount = 0;
+
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] { (byte) b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					while (len > 0) {
+						final int count = Math.min(len, CHUNK_SIZE - mCount);
+						System.arraycopy(b, off, mBuffer, mCount, count);
+						mCount += count;
+						off += count;
+						len -= count;
+						if (mCount == CHUNK_SIZE) {
+							flush();
+						}
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					if (mCount > 0) {
+						writeChunk("IDAT", mBuffer, 0, mCount);
+						mCount = 0;
+					}
+				}
+			}, mDeflater, CHUNK_SIZE);
+		}
+
+		void writeRows(int[] pixels, int rows) throws IOException {
+			final byte[] row = mRow;
+			row[0] = 1; // sub filter
+			for (int y = 0; y < rows; y++) {
+				final int offset = y * mWidth;
+				int previous = 0;
+				for (int x = 0; x < mWidth; x++) {
+					final int pixel = pixels[offset + x];
+					final int i = 1 + x * 4;
+					row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+					row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+					row[i + 2] = (byte) (pixel - previous);
+					row[i + 3] = (byte) ((pixel >>> 24) - (previous >>> 24));
+					previous = pixel;
+				}
+				mImageData.write(row);
+			}
+		}
+
+		void finish() throws IOException {
+			mImageData.finish();
+			mImageData.flush();
+			writeChunk("IEND", mRow, 0, 0);
+			mOut.flush();
+		}
+
+		void release() {
+			mDeflater.end();
+		}
+
+		private void writeChunk(String type, byte[] data, int offset,
+				int length) throws IOException {
+			final byte[] header = mChunkHeader;
+			putInt(header, 0, length);
+			for (int i = 0; i < 4; i++) {
+				header[4 + i] = (byte) type.charAt(i);
+			}
+			mOut.write(header);
+			mOut.write(data, offset, length);
+			mCrc.reset();
+			mCrc.update(header, 4, 4);
+			mCrc.update(data, offset, length);
+			putInt(header, 0, (int) mCrc.getValue());
+			mOut.write(header, 0, 4);
+		}
+
+		private static void putInt(byte[] buffer, int offset, int value) {
+			buffer[offset] = (byte) (value >>> 24);
+			buffer[offset + 1] = (byte) (value >>> 16);
+			buffer[offset + 2] = (byte) (value >>> 8);
+			buffer[offset + 3] = (byte) value;
+		}
+	}
+}
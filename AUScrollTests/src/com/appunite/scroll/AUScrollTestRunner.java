@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import android.os.Bundle;
+import android.test.InstrumentationTestRunner;
+
+/**
+ * Runner of library tests. Argument "updateBaseline" set to true makes
+ * baseline tests write current results instead of comparing them.
+ */
+public class AUScrollTestRunner extends InstrumentationTestRunner {
+
+	private static final String ARGUMENT_UPDATE_BASELINE = "updateBaseline";
+
+	private static boolean sUpdateBaseline = false;
+
+	@Override
+	public void onCreate(Bundle arguments) {
+		if (arguments != null) {
+			sUpdateBaseline = Boolean.parseBoolean(arguments
+					.getString(ARGUMENT_UPDATE_BASELINE));
+		}
+		super.onCreate(arguments);
+	}
+
+	static boolean isUpdatingBaseline() {
+		return sUpdateBaseline;
+	}
+}
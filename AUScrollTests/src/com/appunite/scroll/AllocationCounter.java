@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import android.os.Debug;
+
+/**
+ * Counts objects allocated by calling thread between {@link #start()} and
+ * {@link #stop()}.
+ * 
+ * Per thread counters are deprecated since API 23, but runtime still counts
+ * them. They are exact for calling thread and read without allocating, so
+ * tests can expect zero.
+ */
+final class AllocationCounter {
+
+	private int mStart;
+	private boolean mCounting = false;
+
+	@SuppressWarnings("deprecation")
+	void start() {
+		if (mCounting) {
+			throw new IllegalStateException("Already counting");
+		}
+		mCounting = true;
+		Debug.resetThreadAllocCount();
+		Debug.startAllocCounting();
+		mStart = Debug.getThreadAllocCount();
+	}
+
+	/**
+	 * @return objects allocated since {@link #start()}
+	 */
+	@SuppressWarnings("deprecation")
+	long stop() {
+		if (!mCounting) {
+			throw new IllegalStateException("Not counting");
+		}
+		final long count = Debug.getThreadAllocCount() - mStart;
+		Debug.stopAllocCounting();
+		mCounting = false;
+		return count;
+	}
+
+	/**
+	 * @return objects allocated since {@link #start()} without stopping
+	 */
+	@SuppressWarnings("deprecation")
+	long get() {
+		return Debug.getThreadAllocCount() - mStart;
+	}
+}
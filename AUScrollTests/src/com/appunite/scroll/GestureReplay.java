@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+import android.view.MotionEvent.PointerCoords;
+
+/**
+ * Deterministic replay of scripted or recorded gestures for performance
+ * regression checks.
+ *
+ * Events are dispatched to the view with synthetic times. Between events,
+ * and after the gesture until the view is idle, frames are stepped with the
+ * replay's frame clock. Each frame calls {@link ScrollableView#computeScroll()}
+ * and draws the view into an offscreen bitmap. Scrollers read the same clock
+ * during replay, so fling results do not depend on device speed.
+ *
+ * For every gesture the replay reports the frame count, {@link ScrollStats}
+ * and the final scroll position and scale. It also reports the number of
+ * objects the view allocated while handling events and frames. After a
+ * warm-up gesture, touch, scroller and draw paths should report zero.
+ * {@link #compare(List, String, float)} checks these against a stored
+ * baseline. Scroll position is compared in dips, so one baseline fits all
+ * densities. Timings and allocations are not part of the baseline.
+ *
+ * Has to be run on UI thread with view laid out and not in
+ * {@link ScrollGroup}.
+ */
+class GestureReplay {
+
+	public static final long DEFAULT_FRAME_INTERVAL_MILLIS = 16;
+
+	private static final int MAX_SETTLE_FRAMES = 2000;
+	private static final long HOLD_MILLIS = 150;
+	private static final long TAP_MILLIS = 50;
+
+	private final long mFrameIntervalMillis;
+	private final ArrayList<Gesture> mGestures = new ArrayList<Gesture>();
+	private final AllocationCounter mAllocationCounter = new AllocationCounter();
+	private Gesture mRecording = null;
+	private int mAllocationCount;
+	private double mTouchLagSum;
+	private int mTouchLagFrames;
+	private float mDownX;
+	private float mDownY;
+	private int mDownScrollX;
+	private int mDownScrollY;
+
+	public GestureReplay() {
+		this(DEFAULT_FRAME_INTERVAL_MILLIS);
+	}
+
+	public GestureReplay(long frameIntervalMillis) {
+		if (frameIntervalMillis <= 0) {
+			throw new IllegalArgumentException("frameIntervalMillis <= 0");
+		}
+		mFrameIntervalMillis = frameIntervalMillis;
+	}
+
+	/**
+	 * Drags finger and holds it before lifting, so no fling follows
+	 */
+	public GestureReplay drag(float fromX, float fromY, float toX, float toY,
+			long durationMillis) {
+		final Gesture gesture = move("drag", fromX, fromY, toX, toY,
+				durationMillis);
+		for (long time = mFrameIntervalMillis; time <= HOLD_MILLIS; time += mFrameIntervalMillis) {
+			gesture.add(durationMillis + time, MotionEvent.ACTION_MOVE, toX,
+					toY);
+		}
+		gesture.add(durationMillis + HOLD_MILLIS, MotionEvent.ACTION_UP, toX,
+				toY);
+		mGestures.add(gesture);
+		return this;
+	}
+
+	/**
+	 * Drags finger and lifts it while moving
+	 */
+	public GestureReplay fling(float fromX, float fromY, float toX, float toY,
+			long durationMillis) {
+		final Gesture gesture = move("fling", fromX, fromY, toX, toY,
+				durationMillis);
+		gesture.add(durationMillis, MotionEvent.ACTION_UP, toX, toY);
+		mGestures.add(gesture);
+		return this;
+	}
+
+	public GestureReplay tap(float x, float y) {
+		final Gesture gesture = new Gesture("tap");
+		gesture.add(0, MotionEvent.ACTION_DOWN, x, y);
+		gesture.add(TAP_MILLIS, MotionEvent.ACTION_UP, x, y);
+		mGestures.add(gesture);
+		return this;
+	}
+
+	/**
+	 * Two fingers on horizontal line through center, distance between them
+	 * changes from fromSpan to toSpan
+	 */
+	public GestureReplay pinch(float centerX, float centerY, float fromSpan,
+			float toSpan, long durationMillis) {
+		final Gesture gesture = new Gesture("pinch");
+		final float fromHalf = fromSpan / 2.0f;
+		final float toHalf = toSpan / 2.0f;
+		gesture.add(0, MotionEvent.ACTION_DOWN, centerX - fromHalf, centerY);
+		gesture.add(0, MotionEvent.ACTION_POINTER_DOWN
+				| (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), centerX
+				- fromHalf, centerY, centerX + fromHalf, centerY);
+		final int steps = steps(durationMillis);
+		for (int step = 1; step <= steps; step++) {
+			final float half = fromHalf + (toHalf - fromHalf) * step / steps;
+			gesture.add(durationMillis * step / steps,
+					MotionEvent.ACTION_MOVE, centerX - half, centerY, centerX
+							+ half, centerY);
+		}
+		gesture.add(durationMillis, MotionEvent.ACTION_POINTER_UP
+				| (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), centerX
+				- toHalf, centerY, centerX + toHalf, centerY);
+		gesture.add(durationMillis, MotionEvent.ACTION_UP, centerX - toHalf,
+				centerY);
+		mGestures.add(gesture);
+		return this;
+	}
+
+	/**
+	 * Steps frames without touching the view
+	 */
+	public GestureReplay idle(long durationMillis) {
+		final Gesture gesture = new Gesture("idle");
+		gesture.mDuration = durationMillis;
+		mGestures.add(gesture);
+		return this;
+	}
+
+	/**
+	 * Appends real event to recorded gestures, every ACTION_DOWN starts new
+	 * gesture. Event is copied, so it may be recycled afterwards.
+	 */
+	public void record(MotionEvent event) {
+		final int action = event.getActionMasked();
+		if (action == MotionEvent.ACTION_DOWN || mRecording == null) {
+			mRecording = new Gesture("recorded");
+			mGestures.add(mRecording);
+		}
+		final long downTime = event.getDownTime();
+		final int pointerCount = event.getPointerCount();
+		final int historySize = event.getHistorySize();
+		for (int h = 0; h < historySize; h++) {
+			final Sample sample = new Sample(event.getHistoricalEventTime(h)
+					- downTime, MotionEvent.ACTION_MOVE, pointerCount);
+			for (int i = 0; i < pointerCount; i++) {
+				sample.mIds[i] = event.getPointerId(i);
+				event.getHistoricalPointerCoords(i, h, sample.mCoords[i]);
+			}
+			mRecording.mSamples.add(sample);
+		}
+		final Sample sample = new Sample(event.getEventTime() - downTime,
+				event.getAction(), pointerCount);
+		for (int i = 0; i < pointerCount; i++) {
+			sample.mIds[i] = event.getPointerId(i);
+			event.getPointerCoords(i, sample.mCoords[i]);
+		}
+		mRecording.mSamples.add(sample);
+		if (action == MotionEvent.ACTION_UP
+				|| action == MotionEvent.ACTION_CANCEL) {
+			mRecording = null;
+		}
+	}
+
+	public void clear() {
+		mGestures.clear();
+		mRecording = null;
+	}
+
+	private Gesture move(String name, float fromX, float fromY, float toX,
+			float toY, long durationMillis) {
+		final Gesture gesture = new Gesture(name);
+		gesture.add(0, MotionEvent.ACTION_DOWN, fromX, fromY);
+		final int steps = steps(durationMillis);
+		for (int step = 1; step <= steps; step++) {
+			gesture.add(durationMillis * step / steps,
+					MotionEvent.ACTION_MOVE, fromX + (toX - fromX) * step
+							/ steps, fromY + (toY - fromY) * step / steps);
+		}
+		return gesture;
+	}
+
+	private int steps(long durationMillis) {
+		return (int) Math.max(1, durationMillis / mFrameIntervalMillis);
+	}
+
+	/**
+	 * Replays all gestures in order
+	 *
+	 * @return one result per gesture
+	 */
+	public List<Result> run(ScrollableView view) {
+		final FrameClock clock = new FrameClock(SystemClock.uptimeMillis());
+		final ScrollStats previousStats = view.getScrollStats();
+		final ScrollStats stats = new ScrollStats();
+		final Bitmap bitmap = Bitmap.createBitmap(Math.max(1, view.getWidth()),
+				Math.max(1, view.getHeight()), Bitmap.Config.ARGB_8888);
+		final Canvas canvas = new Canvas(bitmap);
+		final ArrayList<Result> results = new ArrayList<Result>(
+				mGestures.size());
+		OverScrollerCompat.setAnimationClock(clock);
+		view.setScrollStats(stats);
+		mAllocationCounter.start();
+		try {
+			for (Gesture gesture : mGestures) {
+				stats.reset();
+				mAllocationCount = 0;
+				mTouchLagSum = 0.0;
+				mTouchLagFrames = 0;
+				int frames = 0;
+				boolean dragging = false;
+				final long downTime = clock.mTime;
+				final ArrayList<Sample> samples = gesture.mSamples;
+				for (int i = 0; i < samples.size(); i++) {
+					final Sample sample = samples.get(i);
+					final long eventTime = downTime + sample.mTime;
+					while (clock.mTime + mFrameIntervalMillis <= eventTime) {
+						frame(view, canvas, clock);
+						frames += 1;
+						if (dragging) {
+							measureTouchLag(view, samples.get(i - 1), sample,
+									clock.mTime - downTime);
+						}
+					}
+					dispatch(view, sample, downTime, eventTime);
+					if (sample.mAction == MotionEvent.ACTION_DOWN
+							&& sample.mIds.length == 1) {
+						dragging = true;
+						mDownX = sample.mCoords[0].x;
+						mDownY = sample.mCoords[0].y;
+						mDownScrollX = view.getScrollX();
+						mDownScrollY = view.getScrollY();
+					} else if (sample.mAction != MotionEvent.ACTION_MOVE) {
+						dragging = false;
+					}
+				}
+				while (clock.mTime < downTime + gesture.mDuration) {
+					frame(view, canvas, clock);
+					frames += 1;
+				}
+				for (int i = 0; i < MAX_SETTLE_FRAMES && !isSettled(view); i++) {
+					frame(view, canvas, clock);
+					frames += 1;
+				}
+				results.add(new Result(gesture.mName, frames,
+						mAllocationCount, mTouchLagFrames == 0 ? 0.0f
+								: (float) (mTouchLagSum / mTouchLagFrames),
+						stats, view));
+			}
+		} finally {
+			mAllocationCounter.stop();
+			OverScrollerCompat.setAnimationClock(null);
+			view.setScrollStats(previousStats);
+			bitmap.recycle();
+		}
+		return results;
+	}
+
+	private static boolean isSettled(ScrollableView view) {
+		return view.getInteractionState() == ScrollableView.INTERACTION_IDLE
+				&& view.isScrollFinished();
+	}
+
+	private void frame(ScrollableView view, Canvas canvas, FrameClock clock) {
+		clock.mTime += mFrameIntervalMillis;
+		final int restoreCount = canvas.save();
+		final long allocations = mAllocationCounter.get();
+		view.computeScroll();
+		// parent would translate canvas by scroll before drawing child
+		canvas.translate(-view.getScrollX(), -view.getScrollY());
+		view.draw(canvas);
+		mAllocationCount += (int) (mAllocationCounter.get() - allocations);
+		canvas.restoreToCount(restoreCount);
+	}
+
+	/**
+	 * Measures distance between content and finger position at frame time.
+	 * Content dragged exactly with finger would be scrolled by the distance
+	 * finger moved since down.
+	 */
+	private void measureTouchLag(ScrollableView view, Sample previous,
+			Sample next, long time) {
+		final float progress = next.mTime == previous.mTime ? 1.0f : Math
+				.max(0.0f, Math.min(1.0f, (float) (time - previous.mTime)
+						/ (next.mTime - previous.mTime)));
+		final PointerCoords from = previous.mCoords[0];
+		final PointerCoords to = next.mCoords[0];
+		final float fingerX = from.x + (to.x - from.x) * progress;
+		final float fingerY = from.y + (to.y - from.y) * progress;
+		final float lagX = view.getScrollX() - (mDownScrollX + mDownX - fingerX);
+		final float lagY = view.getScrollY() - (mDownScrollY + mDownY - fingerY);
+		mTouchLagSum += Math.sqrt(lagX * lagX + lagY * lagY);
+		mTouchLagFrames += 1;
+	}
+
+	private void dispatch(ScrollableView view, Sample sample, long downTime,
+			long eventTime) {
+		final MotionEvent event = MotionEvent.obtain(downTime, eventTime,
+				sample.mAction, sample.mIds.length, sample.mIds,
+				sample.mCoords, 0, 1.0f, 1.0f, 0, 0,
+				InputDevice.SOURCE_TOUCHSCREEN, 0);
+		final long allocations = mAllocationCounter.get();
+		view.dispatchTouchEvent(event);
+		mAllocationCount += (int) (mAllocationCounter.get() - allocations);
+		event.recycle();
+	}
+
+	/**
+	 * @return baseline of results, one line per gesture
+	 */
+	public static String signature(List<Result> results) {
+		final StringBuilder builder = new StringBuilder();
+		for (Result result : results) {
+			builder.append(result.getSignature()).append('\n');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Compares results with baseline created by {@link #signature(List)}.
+	 * Lines starting with # and empty lines of baseline are skipped. Every
+	 * number may drift by tolerance fraction of expected value, but at least
+	 * by one for rounding.
+	 * 
+	 * @return null if results match baseline, otherwise description of
+	 *         first drift
+	 */
+	public static String compare(List<Result> results, String baseline,
+			float tolerance) {
+		final ArrayList<String> expected = new ArrayList<String>();
+		for (String line : baseline.split("\n")) {
+			line = line.trim();
+			if (line.length() != 0 && !line.startsWith("#")) {
+				expected.add(line);
+			}
+		}
+		final int count = Math.max(expected.size(), results.size());
+		for (int i = 0; i < count; i++) {
+			final String expectedLine = i < expected.size() ? expected.get(i)
+					: null;
+			final String actualLine = i < results.size() ? results.get(i)
+					.getSignature() : null;
+			if (expectedLine == null || actualLine == null
+					|| !matches(expectedLine, actualLine, tolerance)) {
+				return "gesture " + i + ": expected <" + expectedLine
+						+ "> but was <" + actualLine + ">";
+			}
+		}
+		return null;
+	}
+
+	private static boolean matches(String expectedLine, String actualLine,
+			float tolerance) {
+		final String[] expected = expectedLine.split(" ");
+		final String[] actual = actualLine.split(" ");
+		if (expected.length != actual.length || !expected[0].equals(actual[0])) {
+			return false;
+		}
+		for (int i = 1; i < expected.length; i++) {
+			final int expectedSeparator = expected[i].indexOf('=');
+			final int actualSeparator = actual[i].indexOf('=');
+			if (expectedSeparator < 0
+					|| actualSeparator < 0
+					|| !expected[i].substring(0, expectedSeparator).equals(
+							actual[i].substring(0, actualSeparator))) {
+				return false;
+			}
+			final String[] expectedValues = expected[i].substring(
+					expectedSeparator + 1).split(",");
+			final String[] actualValues = actual[i].substring(
+					actualSeparator + 1).split(",");
+			if (expectedValues.length != actualValues.length) {
+				return false;
+			}
+			for (int j = 0; j < expectedValues.length; j++) {
+				final float expectedValue;
+				final float actualValue;
+				try {
+					expectedValue = Float.parseFloat(expectedValues[j]);
+					actualValue = Float.parseFloat(actualValues[j]);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				if (Math.abs(actualValue - expectedValue) > Math.max(1.0f,
+						Math.abs(expectedValue) * tolerance)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public static class Result {
+		private final String mName;
+		private final int mFrames;
+		private final int mAllocationCount;
+		private final float mTouchLag;
+		private final ScrollStats mStats = new ScrollStats();
+		private final int mScrollX;
+		private final int mScrollY;
+		private final float mScaleFactorX;
+		private final float mScaleFactorY;
+		private final float mDensity;
+
+		Result(String name, int frames, int allocationCount, float touchLag,
+				ScrollStats stats, ScrollableView view) {
+			mName = name;
+			mFrames = frames;
+			mAllocationCount = allocationCount;
+			mTouchLag = touchLag;
+			mStats.set(stats);
+			mScrollX = view.getScrollX();
+			mScrollY = view.getScrollY();
+			mScaleFactorX = view.getViewportScaleFactorX();
+			mScaleFactorY = view.getViewportScaleFactorY();
+			mDensity = view.getResources().getDisplayMetrics().density;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * @return frames from first event until view was idle
+		 */
+		public int getFrames() {
+			return mFrames;
+		}
+
+		/**
+		 * @return objects allocated by view while handling events and frames,
+		 *         depends on platform, so it is not part of signature
+		 */
+		public int getAllocationCount() {
+			return mAllocationCount;
+		}
+
+		/**
+		 * @return mean distance in pixels between finger and content on
+		 *         frames drawn while single finger was down, includes scroll
+		 *         range clamping, so measure it on gestures inside range
+		 */
+		public float getTouchLag() {
+			return mTouchLag;
+		}
+
+		public ScrollStats getStats() {
+			return mStats;
+		}
+
+		public int getScrollX() {
+			return mScrollX;
+		}
+
+		public int getScrollY() {
+			return mScrollY;
+		}
+
+		public float getScaleFactorX() {
+			return mScaleFactorX;
+		}
+
+		public float getScaleFactorY() {
+			return mScaleFactorY;
+		}
+
+		/**
+		 * @return deterministic part of result, without timings, scroll in
+		 *         dips
+		 */
+		public String getSignature() {
+			return mName + " frames=" + mFrames + " overScroll="
+					+ mStats.getOverScrollCount() + " invalidate="
+					+ mStats.getInvalidateCount() + " frameRequests="
+					+ mStats.getFrameRequestCount() + " scrollDip="
+					+ Math.round(mScrollX / mDensity) + ","
+					+ Math.round(mScrollY / mDensity) + " scale="
+					+ mScaleFactorX + "," + mScaleFactorY;
+		}
+
+		@Override
+		public String toString() {
+			return getSignature() + " allocations=" + mAllocationCount
+					+ " touchLag=" + mTouchLag + " " + mStats;
+		}
+	}
+
+	private static class FrameClock implements
+			OverScrollerCompat.AnimationClock {
+		long mTime;
+
+		FrameClock(long time) {
+			mTime = time;
+		}
+
+		@Override
+		public long currentAnimationTimeMillis() {
+			return mTime;
+		}
+	}
+
+	private static class Gesture {
+		final String mName;
+		final ArrayList<Sample> mSamples = new ArrayList<Sample>();
+		long mDuration = 0;
+
+		Gesture(String name) {
+			mName = name;
+		}
+
+		void add(long time, int action, float... xy) {
+			final Sample sample = new Sample(time, action, xy.length / 2);
+			for (int i = 0; i < sample.mIds.length; i++) {
+				sample.mIds[i] = i;
+				sample.mCoords[i].x = xy[i * 2];
+				sample.mCoords[i].y = xy[i * 2 + 1];
+				sample.mCoords[i].pressure = 1.0f;
+				sample.mCoords[i].size = 1.0f;
+			}
+			mSamples.add(sample);
+			mDuration = Math.max(mDuration, time);
+		}
+	}
+
+	private static class Sample {
+		final long mTime;
+		final int mAction;
+		final int[] mIds;
+		final PointerCoords[] mCoords;
+
+		Sample(long time, int action, int pointerCount) {
+			mTime = time;
+			mAction = action;
+			mIds = new int[pointerCount];
+			mCoords = new PointerCoords[pointerCount];
+			for (int i = 0; i < pointerCount; i++) {
+				mCoords[i] = new PointerCoords();
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.test.InstrumentationTestCase;
+
+/**
+ * Replays run on UI thread, as views expect. Run with "updateBaseline"
+ * argument of {@link AUScrollTestRunner} to write current results to
+ * external files directory instead of comparing them, see README.
+ */
+public class GestureReplayTest extends InstrumentationTestCase {
+
+	private static final String BASELINE = "gesture_replay_baseline.txt";
+	private static final String BASELINE_HEADER = ""
+			+ "# Baseline of GestureReplayTest, one line per gesture, see\n"
+			+ "# GestureReplay.signature(). Scroll position is in dips, so it does not\n"
+			+ "# depend on density. Numbers may drift by GestureReplayTest.TOLERANCE.\n"
+			+ "# Written by the test itself with updateBaseline argument.\n";
+	private static final float TOLERANCE = 0.1f;
+	private static final int WIDTH_DIP = 320;
+	private static final int HEIGHT_DIP = 480;
+	private static final int WORKSHEET_DIP = 4000;
+
+	private Context mContext;
+	private float mDensity;
+	private TestView mView;
+	private List<GestureReplay.Result> mResults;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mContext = getInstrumentation().getContext();
+		mDensity = mContext.getResources().getDisplayMetrics().density;
+		getInstrumentation().runOnMainSync(new Runnable() {
+
+			@Override
+			public void run() {
+				mView = new TestView(mContext, dip(WORKSHEET_DIP));
+				mView.layout(0, 0, dip(WIDTH_DIP), dip(HEIGHT_DIP));
+				mView.scrollTo(dip(WORKSHEET_DIP / 2), dip(WORKSHEET_DIP / 2));
+			}
+		});
+	}
+
+	public void testMatchesBaseline() throws IOException {
+		final GestureReplay replay = new GestureReplay();
+		replay.drag(dip(200), dip(300), dip(100), dip(150), 300);
+		replay.fling(dip(100), dip(350), dip(200), dip(150), 100);
+		replay.tap(dip(160), dip(240));
+		replay.idle(200);
+		final List<GestureReplay.Result> results = runOnUiThread(replay);
+		if (AUScrollTestRunner.isUpdatingBaseline()) {
+			writeBaseline(BASELINE, GestureReplay.signature(results));
+			return;
+		}
+
+		final String drift = GestureReplay.compare(results,
+				readAsset(BASELINE), TOLERANCE);
+		assertNull(drift + ", current results:\n"
+				+ GestureReplay.signature(results), drift);
+	}
+
+	public void testDragAndFlingDoNotAllocateAfterWarmUp() {
+		runOnUiThread(new GestureReplay().drag(dip(200), dip(300), dip(100),
+				dip(150), 300).fling(dip(100), dip(350), dip(200), dip(150),
+				100));
+
+		final List<GestureReplay.Result> results = runOnUiThread(new GestureReplay()
+				.drag(dip(100), dip(150), dip(200), dip(300), 300).fling(
+						dip(200), dip(150), dip(100), dip(350), 100));
+		for (GestureReplay.Result result : results) {
+			assertTrue(result.getFrames() > 0);
+			assertEquals(result.toString(), 0, result.getAllocationCount());
+		}
+	}
+
+	public void testTouchPredictionReducesTouchLag() {
+		final float lag = measureDragLag(0);
+		final float predictedLag = measureDragLag(
+				GestureReplay.DEFAULT_FRAME_INTERVAL_MILLIS);
+		assertTrue("lag " + lag + " predicted lag " + predictedLag,
+				predictedLag < lag * 0.5f);
+	}
+
+	/**
+	 * @return mean touch lag of drag inside scroll range
+	 */
+	private float measureDragLag(final long predictionMillis) {
+		getInstrumentation().runOnMainSync(new Runnable() {
+
+			@Override
+			public void run() {
+				mView.setTouchPredictionMillis(predictionMillis);
+			}
+		});
+		final List<GestureReplay.Result> results = runOnUiThread(new GestureReplay()
+				.drag(dip(200), dip(300), dip(100), dip(150), 300));
+		return results.get(0).getTouchLag();
+	}
+
+	private List<GestureReplay.Result> runOnUiThread(final GestureReplay replay) {
+		mResults = null;
+		getInstrumentation().runOnMainSync(new Runnable() {
+
+			@Override
+			public void run() {
+				mResults = replay.run(mView);
+			}
+		});
+		return mResults;
+	}
+
+	private void writeBaseline(String name, String signature)
+			throws IOException {
+		final File file = new File(mContext.getExternalFilesDir(null), name);
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(
+				file), "UTF-8");
+		try {
+			writer.write(BASELINE_HEADER);
+			writer.write(signature);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private String readAsset(String name) throws IOException {
+		final InputStream stream = mContext.getAssets().open(name);
+		try {
+			final Reader reader = new InputStreamReader(stream, "UTF-8");
+			final StringBuilder builder = new StringBuilder();
+			final char[] buffer = new char[1024];
+			int read;
+			while ((read = reader.read(buffer)) >= 0) {
+				builder.append(buffer, 0, read);
+			}
+			return builder.toString();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private int dip(float value) {
+		return (int) (value * mDensity + 0.5f);
+	}
+
+	private static class TestView extends ScrollableView {
+		private final int mWorksheetSize;
+
+		TestView(Context context, int worksheetSize) {
+			super(context);
+			mWorksheetSize = worksheetSize;
+		}
+
+		@Override
+		protected int getWorksheetWidth() {
+			return mWorksheetSize;
+		}
+
+		@Override
+		protected int getWorksheetHeight() {
+			return mWorksheetSize;
+		}
+
+		@Override
+		protected void onDraw(Canvas canvas, int left, int top, int right,
+				int bottom) {
+		}
+	}
+}
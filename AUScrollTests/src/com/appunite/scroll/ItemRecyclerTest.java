@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import junit.framework.TestCase;
+
+public class ItemRecyclerTest extends TestCase {
+
+	private static final int TYPE = 0;
+	private static final int ITEM_WIDTH = 10;
+	private static final int ITEM_COUNT = 1000;
+	private static final int WINDOW_WIDTH = 100;
+
+	private CountingRecycler mRecycler;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mRecycler = new CountingRecycler();
+	}
+
+	public void testKeepsHolderWhileItemStaysInWindow() {
+		mRecycler.setVisibleWindow(0, 0, WINDOW_WIDTH, 10);
+		final Object holder = obtainItem(3);
+		mRecycler.setVisibleWindow(5, 0, WINDOW_WIDTH + 5, 10);
+		assertSame(holder, obtainItem(3));
+		assertEquals(1, mRecycler.mBindCount);
+	}
+
+	public void testReusesHolderOfItemThatLeftWindow() {
+		mRecycler.setVisibleWindow(0, 0, WINDOW_WIDTH, 10);
+		final Object holder = obtainItem(0);
+		mRecycler.setVisibleWindow(ITEM_WIDTH, 0, WINDOW_WIDTH + ITEM_WIDTH,
+				10);
+		assertEquals(0, mRecycler.getBoundCount());
+		assertSame(holder, obtainItem(10));
+		assertEquals(1, mRecycler.mCreateCount);
+	}
+
+	public void testKeepsFrozenItems() {
+		mRecycler.setVisibleWindow(0, 0, WINDOW_WIDTH, 10, ITEM_WIDTH, 0);
+		final Object frozen = obtainItem(0);
+		obtainItem(5);
+		mRecycler.setVisibleWindow(500, 0, 500 + WINDOW_WIDTH, 10,
+				ITEM_WIDTH, 0);
+		assertEquals(1, mRecycler.getBoundCount());
+		assertSame(frozen, obtainItem(0));
+	}
+
+	public void testRecycleItem() {
+		final Object holder = obtainItem(7);
+		assertTrue(mRecycler.recycleItem(7));
+		assertFalse(mRecycler.recycleItem(7));
+		assertEquals(0, mRecycler.getBoundCount());
+		assertSame(holder, obtainItem(8));
+	}
+
+	public void testBoundItemsSurviveTableGrowth() {
+		mRecycler.setVisibleWindow(0, 0, ITEM_COUNT * ITEM_WIDTH, 10);
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			obtainItem(i);
+		}
+		final int creates = mRecycler.mCreateCount;
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			obtainItem(i);
+		}
+		assertEquals(ITEM_COUNT, mRecycler.getBoundCount());
+		assertEquals(creates, mRecycler.mCreateCount);
+		assertEquals(ITEM_COUNT, mRecycler.mBindCount);
+	}
+
+	public void testSteadyScrollDoesNotAllocate() {
+		slideWindow();
+		final int creates = mRecycler.mCreateCount;
+
+		final AllocationCounter counter = new AllocationCounter();
+		counter.start();
+		slideWindow();
+		final long allocations = counter.stop();
+
+		assertEquals("holders created after warm up", creates,
+				mRecycler.mCreateCount);
+		assertEquals("allocations", 0, allocations);
+	}
+
+	/**
+	 * Slides window over all items and back, obtains visible ones
+	 */
+	private void slideWindow() {
+		final int end = ITEM_COUNT * ITEM_WIDTH - WINDOW_WIDTH;
+		for (int pass = 0; pass < 2; pass++) {
+			for (int step = 0; step <= end; step += 7) {
+				final int left = pass == 0 ? step : end - step;
+				mRecycler.setVisibleWindow(left, 0, left + WINDOW_WIDTH, 10);
+				final int first = left / ITEM_WIDTH;
+				final int last = (left + WINDOW_WIDTH - 1) / ITEM_WIDTH;
+				for (int i = first; i <= last; i++) {
+					obtainItem(i);
+				}
+			}
+		}
+	}
+
+	private Object obtainItem(int index) {
+		final int left = index * ITEM_WIDTH;
+		return mRecycler.obtain(index, TYPE, left, 0, left + ITEM_WIDTH, 10);
+	}
+
+	private static class CountingRecycler extends ItemRecycler<Object> {
+		int mCreateCount = 0;
+		int mBindCount = 0;
+
+		@Override
+		protected Object onCreateHolder(int type) {
+			mCreateCount += 1;
+			return new Object();
+		}
+
+		@Override
+		protected void onBindHolder(Object holder, long itemId, int type) {
+			mBindCount += 1;
+		}
+	}
+}
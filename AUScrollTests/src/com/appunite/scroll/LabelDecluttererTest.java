@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import junit.framework.TestCase;
+
+public class LabelDecluttererTest extends TestCase {
+
+	private static final float SIZE = 20.0f;
+
+	private LabelDeclutterer mDeclutterer;
+	private final int[] mOut = new int[16];
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mDeclutterer = new LabelDeclutterer();
+	}
+
+	public void testHighestPriorityWinsOverlap() {
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, -5);
+		final int winner = mDeclutterer.addLabel(5, 5, SIZE, SIZE, 7);
+		mDeclutterer.addLabel(10, 10, SIZE, SIZE, 0);
+		assertEquals(1, select(1.0f));
+		assertEquals(winner, mOut[0]);
+	}
+
+	public void testNegativePriorityLosesToZero() {
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, -1);
+		final int winner = mDeclutterer.addLabel(0, 0, SIZE, SIZE, 0);
+		assertEquals(1, select(1.0f));
+		assertEquals(winner, mOut[0]);
+	}
+
+	public void testExtremePriorities() {
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, Integer.MIN_VALUE);
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, -1);
+		final int winner = mDeclutterer.addLabel(0, 0, SIZE, SIZE,
+				Integer.MAX_VALUE);
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, Integer.MAX_VALUE - 1);
+		assertEquals(1, select(1.0f));
+		assertEquals(winner, mOut[0]);
+	}
+
+	public void testSelectionIsInPriorityOrder() {
+		final int[] priorities = new int[] { 0, Integer.MIN_VALUE, -3,
+				Integer.MAX_VALUE, 12, -1 };
+		for (int i = 0; i < priorities.length; i++) {
+			mDeclutterer.addLabel(i * 100, 0, SIZE, SIZE, priorities[i]);
+		}
+		assertEquals(priorities.length, select(1.0f));
+		for (int i = 1; i < priorities.length; i++) {
+			assertTrue(priorities[mOut[i - 1]] >= priorities[mOut[i]]);
+		}
+		assertEquals(Integer.MIN_VALUE, priorities[mOut[priorities.length - 1]]);
+	}
+
+	public void testEqualPrioritiesKeepInsertionOrder() {
+		final int first = mDeclutterer.addLabel(0, 0, SIZE, SIZE,
+				Integer.MIN_VALUE);
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, Integer.MIN_VALUE);
+		assertEquals(1, select(1.0f));
+		assertEquals(first, mOut[0]);
+	}
+
+	public void testPlacementDoesNotDependOnScrollHistory() {
+		mDeclutterer.addLabel(0, 0, SIZE, SIZE, 0);
+		final int high = mDeclutterer.addLabel(SIZE / 2, 0, SIZE, SIZE, 1);
+		// only anchor of low priority label is visible first, it still
+		// loses to label that is not visible yet
+		assertEquals(0, mDeclutterer.select(-100, -100, SIZE / 4, 100, 1.0f,
+				mOut));
+		assertEquals(1, select(1.0f));
+		assertEquals(high, mOut[0]);
+	}
+
+	public void testRevisitedScaleKeepsPlacement() {
+		for (int i = 0; i < 50; i++) {
+			mDeclutterer.addLabel(i * 7, i * 3, SIZE, SIZE, i % 5);
+		}
+		final int count = select(1.0f);
+		final int[] first = new int[count];
+		System.arraycopy(mOut, 0, first, 0, count);
+		// more levels than are cached
+		for (int level = 0; level < 20; level++) {
+			select((float) Math.pow(2.0, -level / 4.0));
+		}
+		assertEquals(count, select(1.0f));
+		for (int i = 0; i < count; i++) {
+			assertEquals(first[i], mOut[i]);
+		}
+	}
+
+	private int select(float scaleFactor) {
+		return mDeclutterer.select(-1000, -1000, 1000, 1000, scaleFactor,
+				mOut);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appunite.scroll;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+
+public class ScrollableGridViewTest extends AndroidTestCase {
+
+	private static final int WIDTH = 480;
+	private static final int HEIGHT = 800;
+	private static final int ROWS = 500;
+	private static final int COLUMNS = 200;
+	private static final int ROW_HEIGHT = 40;
+	private static final int COLUMN_WIDTH = 100;
+
+	private TestGridView mView;
+	private CountingRecycler mRecycler;
+	private Bitmap mBitmap;
+	private Canvas mCanvas;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mView = new TestGridView(getContext());
+		mRecycler = new CountingRecycler();
+		mView.mRecycler = mRecycler;
+		mView.setRowCount(ROWS, ROW_HEIGHT);
+		mView.setColumnCount(COLUMNS, COLUMN_WIDTH);
+		mView.setFrozenPanes(ROW_HEIGHT, COLUMN_WIDTH);
+		mView.setCellRecycler(mRecycler);
+		mView.layout(0, 0, WIDTH, HEIGHT);
+		mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+		mCanvas = new Canvas(mBitmap);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mBitmap.recycle();
+		super.tearDown();
+	}
+
+	public void testFrozenColumnIsNotReboundWhileScrollingHorizontally() {
+		frame(0, 0);
+		final int binds = mRecycler.mFirstColumnBindCount;
+		assertTrue(binds > 0);
+		for (int x = 0; x < 5000; x += 37) {
+			frame(x, 0);
+		}
+		assertEquals(binds, mRecycler.mFirstColumnBindCount);
+	}
+
+	public void testFrozenRowIsNotReboundWhileScrollingVertically() {
+		frame(0, 0);
+		final int binds = mRecycler.mFirstRowBindCount;
+		assertTrue(binds > 0);
+		for (int y = 0; y < 5000; y += 23) {
+			frame(0, y);
+		}
+		assertEquals(binds, mRecycler.mFirstRowBindCount);
+	}
+
+	public void testCachedTopPaneDrawsOnlyExposedStrip() {
+		mView.setContentCacheEnabled(true);
+		frame(0, 0);
+		for (int x = 10; x < 1000; x += 10) {
+			mView.mTopPaneDrawCount = 0;
+			frame(x, 0);
+			// 10 pixel strip touches at most two columns
+			assertTrue("top pane cells drawn " + mView.mTopPaneDrawCount,
+					mView.mTopPaneDrawCount <= 2);
+		}
+	}
+
+	public void testRecyclesCellsThatLeftWindow() {
+		frame(0, 0);
+		final int visible = mRecycler.getBoundCount();
+		for (int step = 0; step < 100; step++) {
+			frame(step * 53, step * 31);
+		}
+		// partially visible cells on both ends and frozen row or column
+		final int maxVisible = (WIDTH / COLUMN_WIDTH + 2 + 1)
+				* (HEIGHT / ROW_HEIGHT + 2 + 1);
+		assertTrue(visible <= maxVisible);
+		assertTrue(mRecycler.getBoundCount() <= maxVisible);
+	}
+
+	public void testCellOutsideWindowIsRecycled() {
+		frame(0, 0);
+		final long cell = mView.getCellId(ROWS - 1, COLUMNS - 1);
+		mView.obtainCellHolder(mRecycler, ROWS - 1, COLUMNS - 1, 0);
+		frame(10, 10);
+		assertFalse(mRecycler.recycleItem(cell));
+	}
+
+	public void testSteadyScrollDoesNotAllocate() {
+		scrollAround();
+		final int creates = mRecycler.mCreateCount;
+
+		final AllocationCounter counter = new AllocationCounter();
+		counter.start();
+		scrollAround();
+		final long allocations = counter.stop();
+
+		assertEquals("holders created after warm up", creates,
+				mRecycler.mCreateCount);
+		assertEquals("allocations", 0, allocations);
+	}
+
+	private void scrollAround() {
+		for (int step = 0; step < 200; step++) {
+			frame(step * 17, step * 29);
+		}
+		for (int step = 200; step > 0; step--) {
+			frame(step * 17, step * 29);
+		}
+	}
+
+	private void frame(int x, int y) {
+		mView.scrollTo(x, y);
+		// as parent does, canvas is in scrolled coordinates
+		final int restoreCount = mCanvas.save();
+		mCanvas.translate(-mView.getScrollX(), -mView.getScrollY());
+		mView.draw(mCanvas);
+		mCanvas.restoreToCount(restoreCount);
+	}
+
+	private static class TestGridView extends ScrollableGridView {
+		CountingRecycler mRecycler;
+		int mTopPaneDrawCount = 0;
+
+		TestGridView(Context context) {
+			super(context);
+		}
+
+		@Override
+		protected void onDrawCell(Canvas canvas, int row, int column,
+				float left, float top, float right, float bottom) {
+			if (row == 0 && column > 0) {
+				mTopPaneDrawCount += 1;
+			}
+			obtainCellHolder(mRecycler, row, column, 0);
+		}
+	}
+
+	private static class CountingRecycler extends ItemRecycler<Object> {
+		int mCreateCount = 0;
+		int mFirstRowBindCount = 0;
+		int mFirstColumnBindCount = 0;
+
+		@Override
+		protected Object onCreateHolder(int type) {
+			mCreateCount += 1;
+			return new Object();
+		}
+
+		@Override
+		protected void onBindHolder(Object holder, long itemId, int type) {
+			if (itemId < COLUMNS) {
+				mFirstRowBindCount += 1;
+			}
+			if (itemId % COLUMNS == 0) {
+				mFirstColumnBindCount += 1;
+			}
+		}
+	}
+}
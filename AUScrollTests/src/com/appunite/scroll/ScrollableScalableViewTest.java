@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+
+public class ScrollableScalableViewTest extends AndroidTestCase {
+
+	private TestView mView;
+	private ScrollStats mStats;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mView = new TestView(getContext());
+		mView.layout(0, 0, 480, 800);
+		mView.setScaleFactor(1.0f);
+		mStats = new ScrollStats();
+		mView.setScrollStats(mStats);
+	}
+
+	public void testScaleBoundsNotClampingScaleDoNotRedraw() {
+		mView.setMinScaleFactor(0.5f);
+		mView.setMaxScaleFactor(2.0f);
+		mView.setMaxScaleFactor(2.0f);
+		assertEquals(0, mStats.getInvalidateCount());
+		assertEquals(1.0f, mView.getScaleFactorX());
+	}
+
+	public void testScaleBoundClampingScaleRedraws() {
+		mView.setMinScaleFactor(1.5f);
+		assertEquals(1, mStats.getInvalidateCount());
+		assertEquals(1.5f, mView.getScaleFactorX());
+		mView.setMaxScaleFactor(3.0f);
+		mView.setScaleFactor(2.0f);
+		assertEquals(2, mStats.getInvalidateCount());
+		mView.setMaxScaleFactor(1.75f);
+		assertEquals(3, mStats.getInvalidateCount());
+		assertEquals(1.75f, mView.getScaleFactorX());
+	}
+
+	private static class TestView extends ScrollableScalableView {
+
+		TestView(Context context) {
+			super(context);
+		}
+
+		@Override
+		protected int getWorksheetWidth() {
+			return 1000;
+		}
+
+		@Override
+		protected int getWorksheetHeight() {
+			return 1000;
+		}
+
+		@Override
+		protected void onDraw(Canvas canvas, int left, int top, int right,
+				int bottom, float scaleFactorX, float scaleFactorY) {
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+public class SeriesPyramidTest extends TestCase {
+
+	// enough buckets to be built in parallel
+	private static final int BIG_SIZE = 1 << 22;
+
+	public void testLongValuesKeepPrecision() {
+		final long base = (1L << 60) + 1;
+		final long[] values = new long[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = base + (i % 7 == 3 ? 1 : 0) - (i == 501 ? 1 : 0);
+		}
+		final SeriesPyramid pyramid = new SeriesPyramid(values);
+		assertEquals(base - 1, pyramid.minLong(0, values.length));
+		assertEquals(base + 1, pyramid.maxLong(0, values.length));
+		assertEquals(base, pyramid.minLong(0, 500));
+		pyramid.append(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, pyramid.maxLong(0, pyramid.size()));
+		assertEquals(Long.MAX_VALUE, pyramid.getLong(values.length));
+	}
+
+	public void testLongQueryMatchesValues() {
+		final long[] values = new long[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = Long.MAX_VALUE - (i * 7919L % 1013);
+		}
+		final SeriesPyramid pyramid = new SeriesPyramid(values);
+		final int columns = 37;
+		final long[] min = new long[columns];
+		final long[] max = new long[columns];
+		final long[] first = new long[columns];
+		final long[] last = new long[columns];
+		pyramid.query(100, 4900, columns, min, max, first, last);
+		final long span = 4800;
+		for (int column = 0; column < columns; column++) {
+			final int start = 100 + (int) (span * column / columns);
+			final int end = 100 + (int) (span * (column + 1) / columns);
+			long expectedMin = Long.MAX_VALUE;
+			long expectedMax = Long.MIN_VALUE;
+			for (int i = start; i < end; i++) {
+				expectedMin = Math.min(expectedMin, values[i]);
+				expectedMax = Math.max(expectedMax, values[i]);
+			}
+			assertEquals(expectedMin, min[column]);
+			assertEquals(expectedMax, max[column]);
+			assertEquals(values[start], first[column]);
+			assertEquals(values[end - 1], last[column]);
+		}
+	}
+
+	public void testDoubleSeriesRejectsLongReads() {
+		final SeriesPyramid pyramid = new SeriesPyramid(new double[] { 1.0 });
+		try {
+			pyramid.minLong(0, 1);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	public void testParallelBuildOnExecutor() {
+		final long[] values = bigSeries();
+		final QueueExecutor executor = new QueueExecutor();
+		final SeriesPyramid serial = new SeriesPyramid(values);
+		final SeriesPyramid parallel = new SeriesPyramid(values, executor);
+		assertTrue(executor.mExecuted > 0);
+		for (int from = 0; from < BIG_SIZE; from += BIG_SIZE / 16) {
+			final int to = from + BIG_SIZE / 16 + 3;
+			assertEquals(serial.minLong(from, to), parallel.minLong(from, to));
+			assertEquals(serial.maxLong(from, to), parallel.maxLong(from, to));
+		}
+	}
+
+	public void testBuildDoesNotWaitForHeldBackJobs() {
+		final long[] values = bigSeries();
+		final ArrayList<Runnable> held = new ArrayList<Runnable>();
+		final SeriesPyramid pyramid = new SeriesPyramid(values,
+				new Executor() {
+
+					@Override
+					public void execute(Runnable command) {
+						held.add(command);
+					}
+				});
+		assertFalse(held.isEmpty());
+		assertEquals(-1L, pyramid.minLong(0, BIG_SIZE));
+		// jobs started late find nothing left to build
+		for (Runnable job : held) {
+			job.run();
+		}
+		assertEquals(-1L, pyramid.minLong(0, BIG_SIZE));
+	}
+
+	private static long[] bigSeries() {
+		final long[] values = new long[BIG_SIZE];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (i * 2654435761L) & 0xffffffL;
+		}
+		values[BIG_SIZE - 5] = -1L;
+		return values;
+	}
+
+	private static class QueueExecutor implements Executor {
+		int mExecuted = 0;
+
+		@Override
+		public synchronized void execute(Runnable command) {
+			mExecuted += 1;
+			new Thread(command).start();
+		}
+	}
+}
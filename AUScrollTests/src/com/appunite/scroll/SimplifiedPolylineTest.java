@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import junit.framework.TestCase;
+
+public class SimplifiedPolylineTest extends TestCase {
+
+	private static final float[] POINTS = new float[] { 0.0f, 0.0f, 10.0f,
+			0.1f, 20.0f, 0.0f };
+
+	public void testRejectsDescendingScaleLevels() {
+		assertRejected(new float[] { 1.0f, 0.5f });
+	}
+
+	public void testRejectsRepeatedScaleLevels() {
+		assertRejected(new float[] { 0.5f, 0.5f });
+	}
+
+	public void testRejectsNonPositiveScaleLevels() {
+		assertRejected(new float[] { 0.0f, 0.5f });
+	}
+
+	public void testPicksCoarsestLevelWithinTolerance() {
+		final SimplifiedPolyline polyline = new SimplifiedPolyline(POINTS,
+				new float[] { 0.5f, 100.0f }, 0.5f);
+		// 0.1 off line is below 1 unit tolerance of level 0.5
+		assertEquals(2, polyline.getVertexCount(0.25f));
+		assertEquals(3, polyline.getVertexCount(50.0f));
+		assertEquals(3, polyline.getVertexCount(200.0f));
+	}
+
+	private static void assertRejected(float[] scaleLevels) {
+		try {
+			new SimplifiedPolyline(POINTS, scaleLevels, 0.5f);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.appunite.scroll;
+
+import junit.framework.TestCase;
+import android.graphics.PointF;
+
+public class TouchPredictorTest extends TestCase {
+
+	private static final float MAX_RESIDUAL = 4.0f;
+	private static final float MAX_DISTANCE = 48.0f;
+	private static final long INTERVAL = 8;
+
+	private TouchPredictor mPredictor;
+	private final PointF mOut = new PointF();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mPredictor = new TouchPredictor(MAX_RESIDUAL, MAX_DISTANCE);
+	}
+
+	public void testExtrapolatesStraightLine() {
+		// 2 px/ms right and 1 px/ms down
+		for (int i = 0; i <= 5; i++) {
+			mPredictor.addSample(i * INTERVAL, i * INTERVAL * 2.0f, i
+					* INTERVAL);
+		}
+		assertTrue(mPredictor.predict(5 * INTERVAL + 10, mOut));
+		assertEquals(5 * INTERVAL * 2.0f + 20.0f, mOut.x, 0.1f);
+		assertEquals(5 * INTERVAL + 10.0f, mOut.y, 0.1f);
+	}
+
+	public void testNoisySamplesAreNotPredicted() {
+		for (int i = 0; i <= 5; i++) {
+			final float noise = i % 2 == 0 ? 10.0f : -10.0f;
+			mPredictor.addSample(i * INTERVAL, i * INTERVAL, noise);
+		}
+		assertFalse(mPredictor.predict(5 * INTERVAL + 10, mOut));
+		assertEquals(5.0f * INTERVAL, mOut.x);
+		assertEquals(-10.0f, mOut.y);
+	}
+
+	public void testTurnBackIsNotPredicted() {
+		for (int i = 0; i <= 5; i++) {
+			mPredictor.addSample(i * INTERVAL, i * INTERVAL, 0.0f);
+		}
+		// small step back still fits the line, but pointer reverses
+		mPredictor.addSample(6 * INTERVAL, 5 * INTERVAL - 1.0f, 0.0f);
+		assertFalse(mPredictor.predict(6 * INTERVAL + 10, mOut));
+		assertEquals(5.0f * INTERVAL - 1.0f, mOut.x);
+	}
+
+	public void testPredictionDistanceIsClamped() {
+		// 10 px/ms would move 160 px in 16 ms
+		for (int i = 0; i <= 5; i++) {
+			mPredictor.addSample(i * INTERVAL, i * INTERVAL * 10.0f, 0.0f);
+		}
+		assertTrue(mPredictor.predict(5 * INTERVAL + 16, mOut));
+		assertEquals(5 * INTERVAL * 10.0f + MAX_DISTANCE, mOut.x, 0.1f);
+		assertEquals(0.0f, mOut.y, 0.1f);
+	}
+
+	public void testTooFewSamplesAreNotPredicted() {
+		mPredictor.addSample(0, 0.0f, 0.0f);
+		mPredictor.addSample(INTERVAL, 10.0f, 0.0f);
+		assertFalse(mPredictor.predict(2 * INTERVAL, mOut));
+		assertEquals(10.0f, mOut.x);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.exampleauscroll;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+
+import com.appunite.scroll.ScrollableGridView;
+
+public class ExampleGridView extends ScrollableGridView {
+
+	private static final int ROW_COUNT = 1000000;
+	private static final int COLUMN_COUNT = 50;
+
+	private Paint mGridPaint;
+	private Paint mTextPaint;
+	private Paint mSelectedPaint;
+	private char[] mText = new char[24];
+
+	private int mSelectedRow = -1;
+	private int mSelectedColumn = -1;
+
+	public ExampleGridView(Context context) {
+		this(context, null, 0);
+	}
+
+	public ExampleGridView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public ExampleGridView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+
+		mGridPaint = new Paint();
+		mGridPaint.setStyle(Paint.Style.STROKE);
+		mGridPaint.setColor(Color.GRAY);
+
+		mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		mTextPaint.setColor(Color.WHITE);
+		mTextPaint.setTextSize(20);
+
+		mSelectedPaint = new Paint();
+		mSelectedPaint.setColor(Color.BLUE);
+
+		setRowCount(ROW_COUNT, 40);
+		setColumnCount(COLUMN_COUNT, 160);
+		for (int row = 0; row < ROW_COUNT; row += 1000) {
+			setRowHeight(row, 80);
+		}
+		setColumnWidth(0, 240);
+		setFrozenPanes(40, 240);
+	}
+
+	@Override
+	protected void onDrawCell(Canvas canvas, int row, int column, float left,
+			float top, float right, float bottom) {
+		if (row == mSelectedRow && column == mSelectedColumn) {
+			canvas.drawRect(left, top, right, bottom, mSelectedPaint);
+		}
+		canvas.drawRect(left, top, right, bottom, mGridPaint);
+		final int start = formatCell(row, column);
+		canvas.drawText(mText, start, mText.length - start, left + 8,
+				bottom - 12, mTextPaint);
+	}
+
+	private int formatCell(int row, int column) {
+		int position = formatNumber(column, mText.length);
+		mText[--position] = ':';
+		return formatNumber(row, position);
+	}
+
+	private int formatNumber(int value, int end) {
+		int position = end;
+		do {
+			mText[--position] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		return position;
+	}
+
+	@Override
+	protected boolean onCellTouchDown(int row, int column) {
+		return true;
+	}
+
+	@Override
+	protected void onCellClick(int row, int column) {
+		mSelectedRow = row;
+		mSelectedColumn = column;
+		invalidateContent();
+	}
+}
@@ -70,6 +70,8 @@ public class ExampleScrollableScalableView extends ScrollableScalableView {
 		mPaint.setStyle(Paint.Style.STROKE);
 		mPaint.setStrokeWidth(5);
 		mPaint.setColor(Color.RED);
+
+		setContentCacheEnabled(true);
 	}
 
 	protected void onDraw(Canvas canvas, int left, int top, int right,
@@ -86,6 +88,14 @@ public class ExampleScrollableScalableView extends ScrollableScalableView {
 		mPattern.draw(canvas);
 		canvas.drawRect(10, 10, mWorksheetWidth - 11, mWorksheetHeight - 11,
 				mPaint);
+		canvas.restoreToCount(restoreDrawing);
+	}
+
+	@Override
+	protected void onDrawOverlay(Canvas canvas, int left, int top, int right,
+			int bottom, float scaleFactorX, float scaleFactorY) {
+		int restoreDrawing = canvas.save();
+		canvas.scale(scaleFactorX, scaleFactorY);
 		mButtonDrawable.draw(canvas);
 		canvas.restoreToCount(restoreDrawing);
 	}
@@ -93,13 +103,13 @@ public class ExampleScrollableScalableView extends ScrollableScalableView {
 	@Override
 	protected void onTouchCanceled(float x, float y) {
 		mButtonDrawable.setState(NORMAL_STATE);
-		invalidate();
+		invalidateOverlay();
 	}
 	
 	@Override
 	protected void onTouchClick(float x, float y) {
 		mButtonDrawable.setState(NORMAL_STATE);
-		invalidate();
+		invalidateOverlay();
 		if (mClickRunnalbe == null) {
 			mClickRunnalbe = new Runnable() {
 				
@@ -122,7 +132,7 @@ public class ExampleScrollableScalableView extends ScrollableScalableView {
 		boolean touch = mButtonRect.contains((int)x, (int)y);
 		if (touch) {
 			mButtonDrawable.setState(PRESSED_STATE);
-			invalidate();
+			invalidateOverlay();
 		}
 		return touch;
 	}
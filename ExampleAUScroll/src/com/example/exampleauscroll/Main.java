@@ -18,11 +18,47 @@ package com.example.exampleauscroll;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+
+import com.appunite.scroll.MinimapView;
 
 public class Main extends Activity {
+
+	private static final long SEED = 1;
+
+	private SyntheticWorksheetView mSyntheticWorksheetView;
+	private MinimapView mMinimapView;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.main);
+
+		mSyntheticWorksheetView = (SyntheticWorksheetView) findViewById(R.id.synthetic_worksheet);
+		mMinimapView = (MinimapView) findViewById(R.id.minimap);
+		mMinimapView.setScrollableView(mSyntheticWorksheetView);
+		showWorkload(SyntheticWorksheet.SHAPES);
+	}
+
+	private void showWorkload(int workload) {
+		mSyntheticWorksheetView.setWorksheet(SyntheticWorksheet.create(
+				workload, SEED));
+		mMinimapView.refresh();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		for (int workload = 0; workload < SyntheticWorksheet.WORKLOAD_COUNT; workload++) {
+			menu.add(Menu.NONE, workload, Menu.NONE,
+					SyntheticWorksheet.getName(workload));
+		}
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		showWorkload(item.getItemId());
+		return true;
 	}
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.exampleauscroll;
+
+import java.util.Random;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+import com.appunite.scroll.SimplifiedPolyline;
+
+/**
+ * Heavy worksheet content generated from seed, so the same content can be
+ * used for benchmarks and gesture replays on every run.
+ */
+public abstract class SyntheticWorksheet {
+
+	public static final int SHAPES = 0;
+	public static final int TEXT_GRID = 1;
+	public static final int POLYLINES = 2;
+	public static final int HUGE_EXTENT = 3;
+	public static final int WORKLOAD_COUNT = 4;
+
+	/**
+	 * @return default variant of workload
+	 */
+	public static SyntheticWorksheet create(int workload, long seed) {
+		switch (workload) {
+		case SHAPES:
+			return shapes(seed, 100000, 20000, 20000);
+		case TEXT_GRID:
+			return textGrid(seed, 2000, 100, 120, 32);
+		case POLYLINES:
+			return polylines(seed, 8, 50000, 50000, 10000);
+		case HUGE_EXTENT:
+			return shapes(seed, 100000, 1 << 26, 1 << 26);
+		default:
+			throw new IllegalArgumentException("Unknown workload: " + workload);
+		}
+	}
+
+	public static String getName(int workload) {
+		switch (workload) {
+		case SHAPES:
+			return "100k shapes";
+		case TEXT_GRID:
+			return "Text grid";
+		case POLYLINES:
+			return "Long polylines";
+		case HUGE_EXTENT:
+			return "Huge extent";
+		default:
+			throw new IllegalArgumentException("Unknown workload: " + workload);
+		}
+	}
+
+	/**
+	 * Random rectangles, ovals and circles of up to 200 units
+	 */
+	public static SyntheticWorksheet shapes(long seed, int count, int width,
+			int height) {
+		return new Shapes(new Random(seed), count, width, height);
+	}
+
+	/**
+	 * Grid of cells with random numbers
+	 */
+	public static SyntheticWorksheet textGrid(long seed, int rows,
+			int columns, int cellWidth, int cellHeight) {
+		return new TextGrid(new Random(seed), rows, columns, cellWidth,
+				cellHeight);
+	}
+
+	/**
+	 * Random walks across whole width of worksheet
+	 */
+	public static SyntheticWorksheet polylines(long seed, int lines,
+			int pointsPerLine, int width, int height) {
+		return new Polylines(new Random(seed), lines, pointsPerLine, width,
+				height);
+	}
+
+	private final int mWidth;
+	private final int mHeight;
+
+	SyntheticWorksheet(int width, int height) {
+		mWidth = width;
+		mHeight = height;
+	}
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Draws visible part of worksheet. Canvas is scaled and its origin is at
+	 * worksheet point left, top, so coordinates drawn stay small on huge
+	 * worksheets.
+	 */
+	public abstract void draw(Canvas canvas, int left, int top, int right,
+			int bottom, float scaleFactor);
+
+	private static int randomColor(Random random) {
+		return Color.argb(160 + random.nextInt(96), random.nextInt(256),
+				random.nextInt(256), random.nextInt(256));
+	}
+
+	private static class Shapes extends SyntheticWorksheet {
+		private static final int MAX_SIZE = 200;
+		private static final int MAX_CELLS_PER_AXIS = 256;
+
+		private static final int RECT = 0;
+		private static final int OVAL = 1;
+		private static final int CIRCLE = 2;
+
+		// shapes sorted by cell of uniform grid, so only visible cells are
+		// drawn
+		private final int[] mLeft;
+		private final int[] mTop;
+		private final short[] mShapeWidth;
+		private final short[] mShapeHeight;
+		private final byte[] mKind;
+		private final int[] mColor;
+		private final int mCellSize;
+		private final int mColumns;
+		private final int mRows;
+		private final int[] mCellStart;
+
+		private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		private final RectF mRect = new RectF();
+
+		Shapes(Random random, int count, int width, int height) {
+			super(width, height);
+			mCellSize = Math.max(512,
+					Math.max(width, height) / MAX_CELLS_PER_AXIS + 1);
+			mColumns = width / mCellSize + 1;
+			mRows = height / mCellSize + 1;
+
+			final int[] left = new int[count];
+			final int[] top = new int[count];
+			final short[] shapeWidth = new short[count];
+			final short[] shapeHeight = new short[count];
+			final byte[] kind = new byte[count];
+			final int[] color = new int[count];
+			final int[] cell = new int[count];
+			mCellStart = new int[mColumns * mRows + 1];
+			for (int i = 0; i < count; i++) {
+				shapeWidth[i] = (short) (8 + random.nextInt(MAX_SIZE - 8));
+				shapeHeight[i] = (short) (8 + random.nextInt(MAX_SIZE - 8));
+				left[i] = random.nextInt(Math.max(1, width - shapeWidth[i]));
+				top[i] = random.nextInt(Math.max(1, height - shapeHeight[i]));
+				kind[i] = (byte) random.nextInt(3);
+				color[i] = randomColor(random);
+				cell[i] = (top[i] / mCellSize) * mColumns + left[i] / mCellSize;
+				mCellStart[cell[i] + 1] += 1;
+			}
+			for (int i = 0; i < mColumns * mRows; i++) {
+				mCellStart[i + 1] += mCellStart[i];
+			}
+			final int[] fill = new int[mColumns * mRows];
+			System.arraycopy(mCellStart, 0, fill, 0, fill.length);
+			mLeft = new int[count];
+			mTop = new int[count];
+			mShapeWidth = new short[count];
+			mShapeHeight = new short[count];
+			mKind = new byte[count];
+			mColor = new int[count];
+			for (int i = 0; i < count; i++) {
+				final int position = fill[cell[i]]++;
+				mLeft[position] = left[i];
+				mTop[position] = top[i];
+				mShapeWidth[position] = shapeWidth[i];
+				mShapeHeight[position] = shapeHeight[i];
+				mKind[position] = kind[i];
+				mColor[position] = color[i];
+			}
+		}
+
+		@Override
+		public void draw(Canvas canvas, int left, int top, int right,
+				int bottom, float scaleFactor) {
+			// shapes are bucketed by top left corner
+			final int firstColumn = Math.max(0, (left - MAX_SIZE) / mCellSize);
+			final int lastColumn = Math.min(mColumns - 1, right / mCellSize);
+			final int firstRow = Math.max(0, (top - MAX_SIZE) / mCellSize);
+			final int lastRow = Math.min(mRows - 1, bottom / mCellSize);
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					final int cell = row * mColumns + column;
+					final int end = mCellStart[cell + 1];
+					for (int i = mCellStart[cell]; i < end; i++) {
+						drawShape(canvas, i, left, top, right, bottom);
+					}
+				}
+			}
+		}
+
+		private void drawShape(Canvas canvas, int i, int left, int top,
+				int right, int bottom) {
+			final int shapeLeft = mLeft[i];
+			final int shapeTop = mTop[i];
+			final int shapeRight = shapeLeft + mShapeWidth[i];
+			final int shapeBottom = shapeTop + mShapeHeight[i];
+			if (shapeLeft > right || shapeTop > bottom || shapeRight < left
+					|| shapeBottom < top) {
+				return;
+			}
+			mPaint.setColor(mColor[i]);
+			mRect.set(shapeLeft - left, shapeTop - top, shapeRight - left,
+					shapeBottom - top);
+			switch (mKind[i]) {
+			case RECT:
+				canvas.drawRect(mRect, mPaint);
+				break;
+			case OVAL:
+				canvas.drawOval(mRect, mPaint);
+				break;
+			case CIRCLE:
+				canvas.drawCircle(mRect.centerX(), mRect.centerY(),
+						Math.min(mRect.width(), mRect.height()) / 2.0f, mPaint);
+				break;
+			default:
+			}
+		}
+	}
+
+	private static class TextGrid extends SyntheticWorksheet {
+		private static final float MIN_TEXT_SIZE = 6.0f;
+
+		private final int mRows;
+		private final int mColumns;
+		private final int mCellWidth;
+		private final int mCellHeight;
+		private final int[] mValues;
+
+		private final Paint mGridPaint = new Paint();
+		private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		private final char[] mText = new char[12];
+
+		TextGrid(Random random, int rows, int columns, int cellWidth,
+				int cellHeight) {
+			super(columns * cellWidth, rows * cellHeight);
+			mRows = rows;
+			mColumns = columns;
+			mCellWidth = cellWidth;
+			mCellHeight = cellHeight;
+			mValues = new int[rows * columns];
+			for (int i = 0; i < mValues.length; i++) {
+				mValues[i] = random.nextInt(1000000);
+			}
+			mGridPaint.setStyle(Paint.Style.STROKE);
+			mGridPaint.setColor(Color.GRAY);
+			mTextPaint.setColor(Color.WHITE);
+			mTextPaint.setTextSize(cellHeight * 0.6f);
+		}
+
+		@Override
+		public void draw(Canvas canvas, int left, int top, int right,
+				int bottom, float scaleFactor) {
+			final int firstColumn = Math.max(0, left / mCellWidth);
+			final int lastColumn = Math.min(mColumns - 1, right / mCellWidth);
+			final int firstRow = Math.max(0, top / mCellHeight);
+			final int lastRow = Math.min(mRows - 1, bottom / mCellHeight);
+			final boolean readable = mTextPaint.getTextSize() * scaleFactor >= MIN_TEXT_SIZE;
+			for (int row = firstRow; row <= lastRow; row++) {
+				final float cellTop = row * mCellHeight - top;
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					final float cellLeft = column * mCellWidth - left;
+					canvas.drawRect(cellLeft, cellTop, cellLeft + mCellWidth,
+							cellTop + mCellHeight, mGridPaint);
+					if (readable) {
+						final int start = formatNumber(mValues[row * mColumns
+								+ column]);
+						canvas.drawText(mText, start, mText.length - start,
+								cellLeft + 6, cellTop + mCellHeight * 0.75f,
+								mTextPaint);
+					}
+				}
+			}
+		}
+
+		private int formatNumber(int value) {
+			int position = mText.length;
+			do {
+				mText[--position] = (char) ('0' + value % 10);
+				value /= 10;
+			} while (value > 0);
+			return position;
+		}
+	}
+
+	private static class Polylines extends SyntheticWorksheet {
+		private final SimplifiedPolyline[] mLines;
+		private final Paint[] mPaints;
+
+		Polylines(Random random, int lines, int pointsPerLine, int width,
+				int height) {
+			super(width, height);
+			mLines = new SimplifiedPolyline[lines];
+			mPaints = new Paint[lines];
+			final float[] points = new float[pointsPerLine * 2];
+			final float step = (float) width / Math.max(1, pointsPerLine - 1);
+			for (int line = 0; line < lines; line++) {
+				float y = random.nextFloat() * height;
+				for (int i = 0; i < pointsPerLine; i++) {
+					y += (float) random.nextGaussian() * 8.0f;
+					y = Math.max(0.0f, Math.min(height, y));
+					points[i * 2] = i * step;
+					points[i * 2 + 1] = y;
+				}
+				mLines[line] = new SimplifiedPolyline(points);
+				final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+				paint.setStyle(Paint.Style.STROKE);
+				paint.setColor(randomColor(random));
+				mPaints[line] = paint;
+			}
+		}
+
+		@Override
+		public void draw(Canvas canvas, int left, int top, int right,
+				int bottom, float scaleFactor) {
+			// polylines are stored in absolute coordinates
+			final int restoreCount = canvas.save();
+			canvas.translate(-left, -top);
+			for (int line = 0; line < mLines.length; line++) {
+				mLines[line].draw(canvas, left, top, right, bottom,
+						scaleFactor, mPaints[line]);
+			}
+			canvas.restoreToCount(restoreCount);
+		}
+	}
+}
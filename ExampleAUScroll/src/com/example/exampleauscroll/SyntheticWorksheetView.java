@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 Jacek Marchwicki <jacek.marchwicki@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.exampleauscroll;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+import com.appunite.scroll.ScrollableScalableView;
+
+public class SyntheticWorksheetView extends ScrollableScalableView {
+
+	private SyntheticWorksheet mWorksheet;
+
+	public SyntheticWorksheetView(Context context) {
+		this(context, null, 0);
+	}
+
+	public SyntheticWorksheetView(Context context, AttributeSet attrs) {
+		this(context, attrs, 0);
+	}
+
+	public SyntheticWorksheetView(Context context, AttributeSet attrs,
+			int defStyle) {
+		super(context, attrs, defStyle);
+	}
+
+	public void setWorksheet(SyntheticWorksheet worksheet) {
+		mWorksheet = worksheet;
+		final int extent = Math.max(worksheet.getWidth(),
+				worksheet.getHeight());
+		// let whole worksheet fit on screen when zoomed out
+		setMinScaleFactor(Math.min(0.1f, 2000.0f / extent));
+		scrollTo(0, 0);
+		awakenScrollBars();
+		invalidateContent();
+	}
+
+	public SyntheticWorksheet getWorksheet() {
+		return mWorksheet;
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas, int left, int top, int right,
+			int bottom, float scaleFactorX, float scaleFactorY) {
+		if (mWorksheet == null) {
+			return;
+		}
+		final int worksheetLeft = (int) (left / scaleFactorX);
+		final int worksheetTop = (int) (top / scaleFactorY);
+		final int restoreCount = canvas.save();
+		canvas.translate(worksheetLeft * scaleFactorX, worksheetTop
+				* scaleFactorY);
+		canvas.scale(scaleFactorX, scaleFactorY);
+		mWorksheet.draw(canvas, worksheetLeft, worksheetTop,
+				(int) (right / scaleFactorX) + 1,
+				(int) (bottom / scaleFactorY) + 1, scaleFactorX);
+		canvas.restoreToCount(restoreCount);
+	}
+
+	@Override
+	protected int getWorksheetWidth() {
+		return mWorksheet == null ? 0 : mWorksheet.getWidth();
+	}
+
+	@Override
+	protected int getWorksheetHeight() {
+		return mWorksheet == null ? 0 : mWorksheet.getHeight();
+	}
+}